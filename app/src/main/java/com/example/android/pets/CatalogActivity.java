@@ -15,31 +15,47 @@
  */
 package com.example.android.pets;
 
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Intent;
 import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Bundle;
 import android.support.design.widget.FloatingActionButton;
+import android.support.v4.app.LoaderManager;
+import android.support.v4.content.CursorLoader;
+import android.support.v4.content.Loader;
 import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.TextView;
+import android.widget.AdapterView;
+import android.widget.ListView;
 
+import com.example.android.pets.data.Pet;
+import com.example.android.pets.data.PetCatalogPrefetch;
 import com.example.android.pets.data.PetContract.PetEntry;
-import com.example.android.pets.data.PetDbHelper;
-
-import static com.example.android.pets.R.id.text_view_pet;
+import com.example.android.pets.data.PetWriteQueue;
 
 /**
  * Displays list of pets that were entered and stored in the app.
  */
-public class CatalogActivity extends AppCompatActivity {
-    // database algorithm class
-    private PetDbHelper mDbHelper;
+public class CatalogActivity extends AppCompatActivity implements
+        LoaderManager.LoaderCallbacks<Cursor> {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = CatalogActivity.class.getSimpleName();
+
+    /** Identifier for the pet data loader */
+    private static final int PET_LOADER = 0;
+
+    /** Adapter for the ListView */
+    private PetCursorAdapter mCursorAdapter;
+
+    /** First pets read at process start, shown until the loader delivers, owned by us */
+    private Cursor mPrefetched;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -54,83 +70,33 @@ public class CatalogActivity extends AppCompatActivity {
                 startActivity(intent);
             }
         });
-        mDbHelper = new PetDbHelper(this);
-        displayDatabaseInfo();
-    }
 
-    private void displayDatabaseInfo() {
-        // Create and/ or open a database to read from it
-        SQLiteDatabase db = mDbHelper.getReadableDatabase();
-        // Perform this raw SQL query " SELECT * FROM pets"
-        // to get a Cursor that contains all rows from the pets table.
-        String[] columns = { PetEntry._ID,
-                PetEntry.COLUMN_PET_NAME,
-                PetEntry.COLUMN_PET_BREED,
-                PetEntry.COLUMN_PET_GENDER,
-                PetEntry.COLUMN_PET_WEIGHT};
-
-        /**
-         * Cursor cursor = db.query(false,
-                PetEntry.TABLE_NAME,
-                columns,
-                null,
-                null,
-                null,
-                null,
-                null,
-                null);
-         */
-        Cursor cursor = getContentResolver().query( PetEntry.CONTENT_URI , columns, null, null, null);
-        TextView displayView = (TextView) findViewById(text_view_pet);
-
-        try {
-            // Create a header in the Text View that looks like this:
-            //
-            // The pets table contains <number of rows in Cursor> pets.
-            // _id - name - breed  - gender -weight
-            //
-            // In the while loop below, iterate through the rows of the
-            // the information from each column in this order.
-            displayView.setText("The pets table contains " + cursor.getCount() + "pets.\n\n");
-            displayView.append(PetEntry._ID + " - " +
-            PetEntry.COLUMN_PET_NAME + " - " +
-                    PetEntry.COLUMN_PET_BREED + " - " +
-                    PetEntry.COLUMN_PET_GENDER + " - " +
-                    PetEntry.COLUMN_PET_WEIGHT + "\n");
-
-            // Figure out the index of each column
-            int idColumnIndex = cursor.getColumnIndex(PetEntry._ID);
-            int nameColumnIndex = cursor.getColumnIndex(PetEntry.COLUMN_PET_NAME);
-            int breedColumnIndex = cursor.getColumnIndex(PetEntry.COLUMN_PET_BREED);
-            int genderColumnIndex = cursor.getColumnIndex(PetEntry.COLUMN_PET_GENDER);
-            int weightColumnIndex = cursor.getColumnIndex(PetEntry.COLUMN_PET_WEIGHT);
-
-            // iterate through all the returned rows in the cursor
-            while (cursor.moveToNext()) {
-                // Use that index to extract the String or int value of th eword
-                // at the current row the cursor is oon.
-                int currentID = cursor.getInt(idColumnIndex);
-                String currentName = cursor.getString(nameColumnIndex);
-                String currentBreed = cursor.getString(breedColumnIndex);
-                int currentGender = cursor.getInt(genderColumnIndex);
-                int currentWeight = cursor.getInt(weightColumnIndex);
-
-                // Desplay the values from each column of the current row in the cursor in teh
-                displayView.append(("\n" + currentID + " - " + currentName + " - "
-                + currentBreed + " - " + currentGender + " - "
-                + currentWeight ));
-            }
+        // Find the ListView which will be populated with the pet data
+        ListView petListView = (ListView) findViewById(R.id.list);
+
+        // Find and set empty view on the ListView, so that it only shows when the list has 0 items.
+        View emptyView = findViewById(R.id.empty_view);
+        petListView.setEmptyView(emptyView);
 
-        } finally {
-            // Always close the cursor when you're done reading from it This
-            // releases all its
-            // resources and makes it invalid.
-            try{
-                cursor.close();
-            } catch (NullPointerException e ) {
-                Log.e("CatalogActivity", e.toString());
+        // Setup an Adapter to create a list item for each row of pet data in the Cursor.
+        // Until the loader finishes it shows the first page prefetched by the provider at
+        // process start, if there is one, so the first frame does not wait on the database.
+        mPrefetched = PetCatalogPrefetch.take();
+        mCursorAdapter = new PetCursorAdapter(this, mPrefetched);
+        petListView.setAdapter(mCursorAdapter);
+
+        // Open the EditorActivity on the pet that was clicked
+        petListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                Intent intent = new Intent(CatalogActivity.this, EditorActivity.class);
+                intent.setData(ContentUris.withAppendedId(PetEntry.CONTENT_URI, id));
+                startActivity(intent);
             }
-        }
+        });
+
+        // Kick off the loader, the query runs on a background thread
+        getSupportLoaderManager().initLoader(PET_LOADER, null, this);
     }
 
     @Override
@@ -143,18 +109,27 @@ public class CatalogActivity extends AppCompatActivity {
 
     private void insertPet(){
         // dummy content values
-        ContentValues values = new ContentValues();
-        // Adding the key-value map in values
-        values.put(PetEntry.COLUMN_PET_NAME, "Toto");
-        values.put(PetEntry.COLUMN_PET_BREED, "Terrier");
-        values.put(PetEntry.COLUMN_PET_GENDER, PetEntry.GENDER_MALE);
-        values.put(PetEntry.COLUMN_PET_WEIGHT, 7);
-        // Insert values into db get the id of the inserted value
-        // Use the {@link PetEntry#CONTENT_URI} to indicate that we want to insert
-        // into the pets database table.
-        // Receive the new content URI that will allow us to access Toto's data in the future
-
-        Uri newRowId = getContentResolver().insert(PetEntry.CONTENT_URI,values);
+        ContentValues values = new Pet(0, "Toto", "Terrier", PetEntry.GENDER_MALE, 7)
+                .toContentValues();
+        // Insert values into db on the writer thread, the loader picks up the new pet
+        // when the provider notifies the change.
+        PetWriteQueue.getInstance(this).insert(values, null);
+    }
+
+    /**
+     * Helper method to delete all pets in the database, off the UI thread: the provider
+     * deletes them in chunks, which takes a while for a large shelter. The loader empties
+     * the list when the provider notifies the change.
+     */
+    private void deleteAllPets() {
+        PetWriteQueue.getInstance(this).delete(PetEntry.CONTENT_URI, new PetWriteQueue.Callback() {
+            @Override
+            public void onWriteFinished(Uri petUri) {
+                if( petUri == null ) {
+                    Log.e(LOG_TAG, "Failed to delete the pets");
+                }
+            }
+        });
     }
 
     @Override
@@ -164,23 +139,58 @@ public class CatalogActivity extends AppCompatActivity {
             // Respond to a click on the "Insert dummy data" menu option
             case R.id.action_insert_dummy_data:
                 insertPet();
-                displayDatabaseInfo();
                 return true;
             // Respond to a click on the "Delete all entries" menu option
             case R.id.action_delete_all_entries:
-                // Do nothing for now
+                deleteAllPets();
                 return true;
         }
         return super.onOptionsItemSelected(item);
     }
 
+    @Override
+    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+        // This loader will execute the ContentProvider's query method on a background thread,
+        // and query again whenever the provider notifies a change to the pets.
+        return new CursorLoader(this,
+                PetEntry.CONTENT_URI,
+                PetEntry.PROJECTION_LIST,
+                null,
+                null,
+                null);
+    }
+
+    @Override
+    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        // Update {@link PetCursorAdapter} with this new cursor containing updated pet data
+        mCursorAdapter.swapCursor(data);
+        releasePrefetched();
+    }
+
+    @Override
+    public void onLoaderReset(Loader<Cursor> loader) {
+        // Callback called when the data needs to be deleted
+        mCursorAdapter.swapCursor(null);
+        releasePrefetched();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if( mPrefetched != null ) {
+            mPrefetched.close();
+            mPrefetched = null;
+        }
+    }
+
     /**
-     * this will be called when the class again starts
-     * meaning we can update the row count here
+     * Close the prefetched page once the adapter no longer shows it. The loader's cursors
+     * are closed by the loader.
      */
-    @Override
-    protected void onStart() {
-        super.onStart();
-        displayDatabaseInfo();
+    private void releasePrefetched() {
+        if( mPrefetched != null && mCursorAdapter.getCursor() != mPrefetched ) {
+            mPrefetched.close();
+            mPrefetched = null;
+        }
     }
 }
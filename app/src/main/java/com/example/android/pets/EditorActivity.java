@@ -16,9 +16,14 @@
 package com.example.android.pets;
 
 import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.support.v4.app.LoaderManager;
 import android.support.v4.app.NavUtils;
+import android.support.v4.content.CursorLoader;
+import android.support.v4.content.Loader;
 import android.support.v7.app.AppCompatActivity;
 import android.text.TextUtils;
 import android.util.Log;
@@ -31,15 +36,31 @@ import android.widget.EditText;
 import android.widget.Spinner;
 import android.widget.Toast;
 
+import com.example.android.pets.data.Pet;
 import com.example.android.pets.data.PetContract.PetEntry;
-import com.example.android.pets.data.PetDbHelper;
+import com.example.android.pets.data.PetCursorMapper;
+import com.example.android.pets.data.PetWriteQueue;
 
 import static java.lang.Integer.parseInt;
 
 /**
- * Allows user to create a new pet or edit an existing one.
+ * Allows user to create a new pet or edit an existing one. Started with the URI of a pet as
+ * intent data it edits that pet, otherwise it adds a new one.
  */
-public class EditorActivity extends AppCompatActivity {
+public class EditorActivity extends AppCompatActivity implements
+        LoaderManager.LoaderCallbacks<Cursor> {
+
+    /** Identifier for the loader of the pet being edited */
+    private static final int EXISTING_PET_LOADER = 0;
+
+    /** Saved state key of {@link #mPetShown} */
+    private static final String STATE_PET_SHOWN = "pet_shown";
+
+    /** URI of the pet being edited, null when adding a new pet */
+    private Uri mCurrentPetUri;
+
+    /** Whether the fields show the loaded pet, so a reload does not overwrite the edits */
+    private boolean mPetShown;
 
     /** EditText field to enter the pet's name */
     private EditText mNameEditText;
@@ -59,8 +80,6 @@ public class EditorActivity extends AppCompatActivity {
      */
     private int mGender = 0;
 
-    PetDbHelper mDbHelper ;
-
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -71,9 +90,25 @@ public class EditorActivity extends AppCompatActivity {
         mBreedEditText = (EditText) findViewById(R.id.edit_pet_breed);
         mWeightEditText = (EditText) findViewById(R.id.edit_pet_weight);
         mGenderSpinner = (Spinner) findViewById(R.id.spinner_gender);
-        // creating a PetDbHealper with context as this
-        mDbHelper = new PetDbHelper(this);
         setupSpinner();
+
+        mCurrentPetUri = getIntent().getData();
+        if( mCurrentPetUri == null ) {
+            setTitle(R.string.editor_activity_title_new_pet);
+        } else {
+            setTitle(R.string.editor_activity_title_edit_pet);
+            // after a configuration change the fields restore the edits themselves
+            mPetShown = savedInstanceState != null
+                    && savedInstanceState.getBoolean(STATE_PET_SHOWN);
+            // Read the pet on a background thread
+            getSupportLoaderManager().initLoader(EXISTING_PET_LOADER, null, this);
+        }
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putBoolean(STATE_PET_SHOWN, mPetShown);
     }
 
     /**
@@ -129,8 +164,8 @@ public class EditorActivity extends AppCompatActivity {
         switch (item.getItemId()) {
             // Respond to a click on the "Save" menu option
             case R.id.action_save:
-                // insert the pet
-                insertPet();
+                // queue the pet for saving, the result is shown once it is saved
+                savePet();
                 // parent activity
                 finish();
                 return true;
@@ -146,7 +181,37 @@ public class EditorActivity extends AppCompatActivity {
         }
         return super.onOptionsItemSelected(item);
     }
-    void insertPet() {
+
+    @Override
+    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+        return new CursorLoader(this, mCurrentPetUri, PetEntry.PROJECTION_ALL, null, null,
+                null);
+    }
+
+    @Override
+    public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
+        if( mPetShown || cursor == null || !cursor.moveToFirst() ) {
+            return;
+        }
+        Pet pet = new PetCursorMapper(cursor).read();
+        mNameEditText.setText(pet.getName());
+        mBreedEditText.setText(pet.getBreed());
+        mWeightEditText.setText(String.valueOf(pet.getWeight()));
+        // the options of the spinner are in the order of the gender values
+        mGenderSpinner.setSelection(pet.getGender());
+        mPetShown = true;
+    }
+
+    @Override
+    public void onLoaderReset(Loader<Cursor> loader) {
+        // the fields keep what they show, they do not hold on to the cursor
+    }
+
+    /**
+     * Queue the pet of the fields: inserted when adding a pet, otherwise an update of
+     * {@link #mCurrentPetUri}, which the write queue merges with other pending edits of it.
+     */
+    void savePet() {
 
         // get name in string
         String nameString = mNameEditText.getText().toString().trim();
@@ -164,24 +229,38 @@ public class EditorActivity extends AppCompatActivity {
             Log.i("EditorActivity", "There is number format exception by weight integer ");
             return ;
         }
-        // Getting values{ @link ContentValues} and adding some values to it
-        ContentValues values = new ContentValues();
-        values.put(PetEntry.COLUMN_PET_NAME, nameString);
-        values.put(PetEntry.COLUMN_PET_BREED, breedString);
-        values.put(PetEntry.COLUMN_PET_WEIGHT, weightInteger);
-        values.put(PetEntry.COLUMN_PET_GENDER, genderInteger);
-        // inserting values that will return the row id of -1( error in insertion )
-        Uri newUri = getContentResolver().insert(PetEntry.CONTENT_URI, values);
-
-        // Show a toast message depending on whetherr or not the insertion was successfful
-
-        if (newUri == null ) {
-            Toast.makeText(this, getString(R.string.editor_insert_pet_failed),
-                    Toast.LENGTH_SHORT).show();
-        } else {
-            Toast.makeText(this, getString(R.string.editor_insert_pet_successful)
-                    , Toast.LENGTH_SHORT).show();
+        // Getting values{ @link ContentValues} of the new pet
+        ContentValues values = new Pet(0, nameString, breedString, genderInteger, weightInteger)
+                .toContentValues();
+        // The activity may be gone by the time the pet is saved, so use the application context
+        final Context appContext = getApplicationContext();
+        if( mCurrentPetUri != null ) {
+            // updating on the writer thread, the callback gets null if the pet is gone
+            PetWriteQueue.getInstance(this).update(mCurrentPetUri, values,
+                    new PetWriteQueue.Callback() {
+                @Override
+                public void onWriteFinished(Uri petUri) {
+                    Toast.makeText(appContext, petUri == null
+                            ? R.string.editor_update_pet_failed
+                            : R.string.editor_update_pet_successful, Toast.LENGTH_SHORT).show();
+                }
+            });
+            return;
         }
+        // inserting values on the writer thread, the callback gets null on error in insertion
+        PetWriteQueue.getInstance(this).insert(values, new PetWriteQueue.Callback() {
+            @Override
+            public void onWriteFinished(Uri newUri) {
+                // Show a toast message depending on whetherr or not the insertion was successfful
+                if (newUri == null ) {
+                    Toast.makeText(appContext, appContext.getString(R.string.editor_insert_pet_failed),
+                            Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(appContext, appContext.getString(R.string.editor_insert_pet_successful)
+                            , Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
 
     }
 }
\ No newline at end of file
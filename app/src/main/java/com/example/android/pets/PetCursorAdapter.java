@@ -0,0 +1,110 @@
+package com.example.android.pets;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.support.v4.widget.CursorAdapter;
+import android.text.TextUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+/**
+ * {@link PetCursorAdapter} is an adapter for a list view that uses a {@link Cursor} of pet
+ * data as its data source. Only the rows that are visible on screen are bound, and the
+ * list item views are recycled by the list view. Photo thumbnails are set by
+ * {@link PetThumbnailLoader}, which never reads them during the bind.
+ */
+public class PetCursorAdapter extends CursorAdapter {
+
+    private final PetThumbnailLoader mThumbnails;
+
+    /** Column indexes of the current cursor, resolved once when the cursor is swapped in */
+    private int mIdColumnIndex;
+    private int mNameColumnIndex;
+    private int mBreedColumnIndex;
+    /** -1 when the cursor has no photo column */
+    private int mPhotoColumnIndex;
+
+    /**
+     * Holds the views of one list item so they are looked up only once per recycled view.
+     */
+    private static class ViewHolder {
+        final ImageView photoImageView;
+        final TextView nameTextView;
+        final TextView summaryTextView;
+
+        ViewHolder(View view) {
+            photoImageView = (ImageView) view.findViewById(R.id.photo);
+            nameTextView = (TextView) view.findViewById(R.id.name);
+            summaryTextView = (TextView) view.findViewById(R.id.summary);
+        }
+    }
+
+    /**
+     * Constructs a new {@link PetCursorAdapter}.
+     * @param context The context
+     * @param c       The cursor from which to get the data.
+     */
+    public PetCursorAdapter(Context context, Cursor c) {
+        super(context, c, 0 /* flags */);
+        mThumbnails = PetThumbnailLoader.getInstance(context);
+        resolveColumnIndexes(c);
+    }
+
+    @Override
+    public Cursor swapCursor(Cursor newCursor) {
+        resolveColumnIndexes(newCursor);
+        return super.swapCursor(newCursor);
+    }
+
+    /**
+     * Look up the column indexes of the given cursor so bindView doesn't have to.
+     */
+    private void resolveColumnIndexes(Cursor cursor) {
+        if( cursor == null ) {
+            return;
+        }
+        mIdColumnIndex = cursor.getColumnIndexOrThrow(PetEntry._ID);
+        mNameColumnIndex = cursor.getColumnIndexOrThrow(PetEntry.COLUMN_PET_NAME);
+        mBreedColumnIndex = cursor.getColumnIndexOrThrow(PetEntry.COLUMN_PET_BREED);
+        mPhotoColumnIndex = cursor.getColumnIndex(PetEntry.COLUMN_PET_PHOTO);
+    }
+
+    /**
+     * Makes a new blank list item view. No data is set (or bound) to the views yet.
+     */
+    @Override
+    public View newView(Context context, Cursor cursor, ViewGroup parent) {
+        View view = LayoutInflater.from(context).inflate(R.layout.list_item, parent, false);
+        view.setTag(new ViewHolder(view));
+        return view;
+    }
+
+    /**
+     * This method binds the pet data (in the current row pointed to by cursor) to the given
+     * list item layout.
+     */
+    @Override
+    public void bindView(View view, Context context, Cursor cursor) {
+        ViewHolder holder = (ViewHolder) view.getTag();
+
+        String petName = cursor.getString(mNameColumnIndex);
+        String petBreed = cursor.getString(mBreedColumnIndex);
+
+        // If the pet breed is empty string or null, then use some default text
+        // that says "Unknown breed", so the TextView isn't blank.
+        if( TextUtils.isEmpty(petBreed) ) {
+            petBreed = context.getString(R.string.unknown_breed);
+        }
+
+        holder.nameTextView.setText(petName);
+        holder.summaryTextView.setText(petBreed);
+
+        String photoHash = mPhotoColumnIndex < 0 ? null : cursor.getString(mPhotoColumnIndex);
+        mThumbnails.bind(holder.photoImageView, cursor.getLong(mIdColumnIndex), photoHash);
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.android.pets;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.support.v4.util.LruCache;
+import android.widget.ImageView;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Shows the thumbnails of the pet photos in the image views of the catalog list.
+ *
+ * Recent thumbnails are kept in a memory cache bounded in bytes, keyed by pet id and photo
+ * hash, so a changed photo is never shown from the cache. Binding a row only looks the
+ * cache up; a thumbnail that is not there is read from {@link PetEntry#buildThumbnailUri}
+ * on a background thread, and set if the view still shows the same pet by then.
+ */
+final class PetThumbnailLoader {
+
+    /** Threads decoding thumbnails */
+    private static final int LOADER_THREADS = 2;
+
+    private static PetThumbnailLoader sInstance;
+
+    private final ContentResolver mResolver;
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(LOADER_THREADS);
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** The thumbnail each view should show, guarded by itself */
+    private final Map<ImageView, String> mRequests = new WeakHashMap<>();
+
+    /**
+     * Returns the loader of the process.
+     */
+    static synchronized PetThumbnailLoader getInstance(Context context) {
+        if( sInstance == null ) {
+            sInstance = new PetThumbnailLoader(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private PetThumbnailLoader(Context context) {
+        mResolver = context.getContentResolver();
+        // an eighth of the heap the app may use
+        int maxBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+        mMemoryCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Show the thumbnail of the photo of the pet in the view, or hide the view if the pet
+     * has no photo. Call it on the main thread.
+     * @param hash the {@link PetEntry#COLUMN_PET_PHOTO} of the pet
+     */
+    void bind(final ImageView view, final long id, final String hash) {
+        if( hash == null ) {
+            setRequest(view, null);
+            view.setImageDrawable(null);
+            view.setVisibility(ImageView.GONE);
+            return;
+        }
+        final String key = id + "-" + hash;
+        setRequest(view, key);
+        view.setVisibility(ImageView.VISIBLE);
+        Bitmap cached = mMemoryCache.get(key);
+        // empty until loaded rather than showing the pet the view was recycled from
+        view.setImageBitmap(cached);
+        if( cached != null ) {
+            return;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // the row may have been scrolled away while this waited
+                if( !isRequested(view, key) ) {
+                    return;
+                }
+                Bitmap bitmap = mMemoryCache.get(key);
+                if( bitmap == null ) {
+                    bitmap = load(id, hash);
+                    if( bitmap == null ) {
+                        return;
+                    }
+                    mMemoryCache.put(key, bitmap);
+                }
+                final Bitmap loaded = bitmap;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if( isRequested(view, key) ) {
+                            view.setImageBitmap(loaded);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void setRequest(ImageView view, String key) {
+        synchronized (mRequests) {
+            if( key == null ) {
+                mRequests.remove(view);
+            } else {
+                mRequests.put(view, key);
+            }
+        }
+    }
+
+    private boolean isRequested(ImageView view, String key) {
+        synchronized (mRequests) {
+            return key.equals(mRequests.get(view));
+        }
+    }
+
+    /**
+     * Read the thumbnail of the given photo of the pet from the provider. Returns null if
+     * there is none, e.g. the pet was deleted or got another photo since the row was bound.
+     */
+    private Bitmap load(long id, String hash) {
+        ParcelFileDescriptor file;
+        try {
+            file = mResolver.openFileDescriptor(PetEntry.buildThumbnailUri(id, hash), "r");
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        if( file == null ) {
+            return null;
+        }
+        try {
+            return BitmapFactory.decodeFileDescriptor(file.getFileDescriptor());
+        } finally {
+            try {
+                file.close();
+            } catch (IOException e) {
+                // nothing was written
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.android.pets.data;
+
+import android.content.ContentValues;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+/**
+ * Immutable copy of one row of the pets table.
+ */
+public final class Pet {
+
+    private final long mId;
+    private final String mName;
+    private final String mBreed;
+    private final int mGender;
+    private final int mWeight;
+
+    public Pet(long id, String name, String breed, int gender, int weight) {
+        mId = id;
+        mName = name;
+        mBreed = breed;
+        mGender = gender;
+        mWeight = weight;
+    }
+
+    /** Returns the {@link PetEntry#_ID} of the pet */
+    public long getId() {
+        return mId;
+    }
+
+    /** Returns the name of the pet, never null */
+    public String getName() {
+        return mName;
+    }
+
+    /** Returns the breed of the pet, may be null */
+    public String getBreed() {
+        return mBreed;
+    }
+
+    /** Returns one of {@link PetEntry#GENDER_UNKNOWN}, {@link PetEntry#GENDER_MALE} or
+     * {@link PetEntry#GENDER_FEMALE} */
+    public int getGender() {
+        return mGender;
+    }
+
+    /** Returns the weight of the pet in kg */
+    public int getWeight() {
+        return mWeight;
+    }
+
+    /**
+     * Returns the pet as content values for an insert or update, without the id.
+     */
+    public ContentValues toContentValues() {
+        ContentValues values = new ContentValues(4);
+        values.put(PetEntry.COLUMN_PET_NAME, mName);
+        values.put(PetEntry.COLUMN_PET_BREED, mBreed);
+        values.put(PetEntry.COLUMN_PET_GENDER, mGender);
+        values.put(PetEntry.COLUMN_PET_WEIGHT, mWeight);
+        return values;
+    }
+
+    /**
+     * Returns the value of the given pet column, boxed the way a cursor row would hold it.
+     */
+    Object getColumnValue(String column) {
+        switch (column) {
+            case PetEntry._ID:
+                return mId;
+            case PetEntry.COLUMN_PET_NAME:
+                return mName;
+            case PetEntry.COLUMN_PET_BREED:
+                return mBreed;
+            case PetEntry.COLUMN_PET_GENDER:
+                return mGender;
+            case PetEntry.COLUMN_PET_WEIGHT:
+                return mWeight;
+            default:
+                throw new IllegalArgumentException("Unknown pet column " + column);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return mId + " - " + mName + " - " + mBreed + " - " + mGender + " - " + mWeight;
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.android.pets.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.pets.data.PetContract.PetBreedEntry;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Interns breed names: every distinct breed is stored once in the breeds table, and pets
+ * refer to it by id.
+ *
+ * The ids are kept in memory, so resolving the breed of a pet usually costs a map lookup.
+ * Names are matched like the NOCASE collation of the table: ignoring the case of ASCII
+ * letters, after trimming surrounding blanks.
+ */
+final class PetBreeds {
+
+    /** Id standing for "no breed", stored as null */
+    static final long NO_BREED = 0;
+
+    private static final String SQL_INSERT_BREED = "INSERT OR IGNORE INTO "
+            + PetBreedEntry.TABLE_NAME + " (" + PetBreedEntry.COLUMN_BREED_NAME + ") VALUES (?)";
+    private static final String SQL_SELECT_BREED = "SELECT " + PetBreedEntry._ID + " FROM "
+            + PetBreedEntry.TABLE_NAME + " WHERE " + PetBreedEntry.COLUMN_BREED_NAME + " = ?";
+
+    private static PetBreeds sInstance;
+
+    private final PetDbHelper mDbHelper;
+
+    /** Ids by folded name, null until first loaded, guarded by this */
+    private Map<String, Long> mIds;
+
+    /**
+     * Returns the breeds of the process.
+     */
+    static synchronized PetBreeds getInstance(Context context) {
+        if( sInstance == null ) {
+            sInstance = new PetBreeds(PetDbHelper.getInstance(context.getApplicationContext()));
+        }
+        return sInstance;
+    }
+
+    private PetBreeds(PetDbHelper dbHelper) {
+        mDbHelper = dbHelper;
+    }
+
+    /**
+     * Returns the id of the breed, adding it to the table if it is new, or {@link #NO_BREED}
+     * for a null or blank breed.
+     *
+     * Call it before beginning the transaction inserting the pet: an id added inside a
+     * transaction is not kept in memory, since the transaction could still roll it back.
+     */
+    long resolve(String breed) {
+        if( breed == null ) {
+            return NO_BREED;
+        }
+        String name = breed.trim();
+        if( name.isEmpty() ) {
+            return NO_BREED;
+        }
+        String key = fold(name);
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        synchronized (this) {
+            if( mIds == null ) {
+                mIds = loadIds(db);
+            }
+            Long cached = mIds.get(key);
+            if( cached != null ) {
+                return cached;
+            }
+        }
+        // A new breed. The lock is not held while writing: a thread in a write transaction
+        // could be waiting for it.
+        SQLiteStatement insert = db.compileStatement(SQL_INSERT_BREED);
+        try {
+            insert.bindString(1, name);
+            insert.executeInsert();
+        } finally {
+            insert.close();
+        }
+        long id = DatabaseUtils.longForQuery(db, SQL_SELECT_BREED, new String[] { name });
+        if( !db.inTransaction() ) {
+            synchronized (this) {
+                mIds.put(key, id);
+            }
+        }
+        return id;
+    }
+
+    private static Map<String, Long> loadIds(SQLiteDatabase db) {
+        Map<String, Long> ids = new HashMap<>();
+        Cursor cursor = db.query(PetBreedEntry.TABLE_NAME, new String[] { PetBreedEntry._ID,
+                PetBreedEntry.COLUMN_BREED_NAME }, null, null, null, null, null);
+        try {
+            while( cursor.moveToNext() ) {
+                ids.put(fold(cursor.getString(1)), cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+
+    /**
+     * Lower-cases the ASCII letters only, as the NOCASE collation does.
+     */
+    private static String fold(String name) {
+        char[] chars = null;
+        for( int i = 0; i < name.length(); i++ ) {
+            char c = name.charAt(i);
+            if( c >= 'A' && c <= 'Z' ) {
+                if( chars == null ) {
+                    chars = name.toCharArray();
+                }
+                chars[i] = (char) (c + ('a' - 'A'));
+            }
+        }
+        return chars == null ? name : new String(chars);
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.android.pets.data;
+
+import android.util.LruCache;
+
+/**
+ * Bounded LRU cache of single pets, keyed by row id, that lets {@link PetProvider} answer
+ * the lookups of a single pet without going to the database.
+ *
+ * A write only becomes visible to other connections once it commits, so the provider
+ * invalidates entries after the commit. To keep a lookup that raced with a write from putting
+ * back the old row, every invalidation bumps a generation, and {@link #put} is ignored when the
+ * generation changed since the lookup read it with {@link #getGeneration}.
+ */
+class PetCache {
+
+    private final LruCache<Long, Pet> mPets;
+
+    /** Bumped on every invalidation, guarded by this */
+    private long mGeneration;
+
+    PetCache(int maxSize) {
+        mPets = new LruCache<>(maxSize);
+    }
+
+    /**
+     * Returns the generation to pass to {@link #put}, read it before querying the database.
+     */
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Returns the cached pet with the given id, or null.
+     */
+    Pet get(long id) {
+        return mPets.get(id);
+    }
+
+    /**
+     * Cache a pet read from the database, unless it was invalidated since the given generation.
+     */
+    synchronized void put(Pet pet, long generation) {
+        if( generation == mGeneration ) {
+            mPets.put(pet.getId(), pet);
+        }
+    }
+
+    /**
+     * Drop the pet with the given id.
+     */
+    synchronized void invalidate(long id) {
+        mGeneration++;
+        mPets.remove(id);
+    }
+
+    /**
+     * Drop every pet, used when a write may have touched any row.
+     */
+    synchronized void invalidateAll() {
+        mGeneration++;
+        mPets.evictAll();
+    }
+
+    /** Returns the number of lookups answered from the cache */
+    int hitCount() {
+        return mPets.hitCount();
+    }
+
+    /** Returns the number of lookups that had to go to the database */
+    int missCount() {
+        return mPets.missCount();
+    }
+
+    @Override
+    public String toString() {
+        return "PetCache[size=" + mPets.size() + ",maxSize=" + mPets.maxSize()
+                + ",hits=" + hitCount() + ",misses=" + missCount() + "]";
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.android.pets.data;
+
+import android.database.Cursor;
+
+/**
+ * Hands the first page of the catalog, read by {@link PetProvider} on a background thread
+ * when the process starts, over to the catalog screen, so its first frame can show pets
+ * before its loader has queried the database.
+ *
+ * The page is an in-memory copy, taken at most once. Every write to the pets drops it and
+ * bumps a generation, and a page read before such a write is not kept, as in {@link PetCache}.
+ */
+public final class PetCatalogPrefetch {
+
+    /** Number of pets prefetched, a few screens of the catalog list */
+    static final int PAGE_SIZE = 50;
+
+    private static Cursor sPage;
+    private static long sGeneration;
+
+    private PetCatalogPrefetch() {}
+
+    /**
+     * Returns the prefetched page, with the columns of {@link PetContract.PetEntry#PROJECTION_LIST}
+     * in id order, or null if there is none (yet). The caller owns and closes the cursor.
+     */
+    public static synchronized Cursor take() {
+        Cursor page = sPage;
+        sPage = null;
+        return page;
+    }
+
+    /**
+     * Returns the generation to pass to {@link #offer}, read it before querying the page.
+     */
+    static synchronized long getGeneration() {
+        return sGeneration;
+    }
+
+    /**
+     * Keep the page for {@link #take}, unless the pets changed since the given generation.
+     */
+    static synchronized void offer(Cursor page, long generation) {
+        if( generation != sGeneration ) {
+            page.close();
+            return;
+        }
+        if( sPage != null ) {
+            sPage.close();
+        }
+        sPage = page;
+    }
+
+    /**
+     * Drop the page after a write to the pets.
+     */
+    static synchronized void invalidate() {
+        sGeneration++;
+        if( sPage != null ) {
+            sPage.close();
+            sPage = null;
+        }
+    }
+}
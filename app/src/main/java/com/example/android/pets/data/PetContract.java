@@ -15,6 +15,22 @@ public final class PetContract {
     public static final Uri BASE_CONTENT_URI =  Uri.parse("content://" + CONTENT_AUTHORITY);
     /**PATH OF THE TABLE */
     public static final String PATH_PETS = "pets";
+    /** Path under {@link #PATH_PETS} for full-text search */
+    public static final String PATH_SEARCH = "search";
+    /** Path under {@link #PATH_PETS} for the aggregate statistics */
+    public static final String PATH_STATS = "stats";
+    /** Path under {@link #PATH_PETS} for the provider metrics */
+    public static final String PATH_METRICS = "metrics";
+    /** Paths under {@link #PATH_PETS} to stream the pets table out and in */
+    public static final String PATH_EXPORT = "export";
+    public static final String PATH_IMPORT = "import";
+    /** Path under {@link #PATH_PETS} for the journal of changes */
+    public static final String PATH_CHANGES = "changes";
+    /** Path under {@link #PATH_PETS} for filtering the pets from memory */
+    public static final String PATH_FILTER = "filter";
+    /** Paths under a pet URI for its photo and the thumbnail of the photo */
+    public static final String PATH_PHOTO = "photo";
+    public static final String PATH_THUMBNAIL = "thumbnail";
 
     // To prevent prevent someone
     // from instantiating the
@@ -28,8 +44,99 @@ public final class PetContract {
         /** Complete CONTENT_URI  to access the pets data in the table */
         public  static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_PETS);
 
+        /**
+         * URI to search pets by name and breed. Append the search text as the last path
+         * segment, see {@link #buildSearchUri}. Results are ranked: pets whose name matches
+         * come before pets that only match by breed. The sort order of the query is ignored,
+         * {@link #QUERY_PARAMETER_LIMIT} can be used to cap the number of results.
+         */
+        public static final Uri CONTENT_SEARCH_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SEARCH);
+
+        /**
+         * URI to filter the pets by gender and weight, see {@link #buildFilterUri}. It is
+         * answered from an in-memory snapshot of the pets, for screens that filter again on
+         * every change of the criteria. The columns are {@link #PROJECTION_ALL}, whatever the
+         * projection, and no selection is allowed. The sort order is one of {@link #_ID},
+         * {@link #COLUMN_PET_NAME}, {@link #COLUMN_PET_BREED} or {@link #COLUMN_PET_WEIGHT},
+         * optionally followed by ASC or DESC; by id when null.
+         */
+        public static final Uri CONTENT_FILTER_URI = Uri.withAppendedPath(CONTENT_URI, PATH_FILTER);
+
+        /**
+         * Query parameters of {@link #CONTENT_FILTER_URI}: the gender, any when left out, and
+         * the inclusive weight range, unbounded on a side left out.
+         */
+        public static final String QUERY_PARAMETER_GENDER = "gender";
+        public static final String QUERY_PARAMETER_MIN_WEIGHT = "min_weight";
+        public static final String QUERY_PARAMETER_MAX_WEIGHT = "max_weight";
+
         /** Name of the database table for pets */
-        public static final String TABLE_NAME = "pets";
+        public static final String TABLE_NAME = PetSql.PETS_TABLE;
+
+        /**
+         * Name of the view of the pets with the columns of this contract. The table stores
+         * the breed as {@link #COLUMN_PET_BREED_ID}, the view turns it back into the name.
+         */
+        public static final String VIEW_NAME = PetSql.PETS_VIEW;
+
+        /** Name of the full-text index over the name and breed of the pets */
+        public static final String FTS_TABLE_NAME = PetSql.FTS_TABLE;
+
+        /** Names of the indexes on the pets table */
+        public static final String INDEX_NAME = "pets_name_idx";
+        public static final String INDEX_BREED = "pets_breed_idx";
+        public static final String INDEX_BREED_NAME = "breeds_name_idx";
+        public static final String INDEX_GENDER_WEIGHT = "pets_gender_weight_idx";
+
+        /**
+         * Query parameter holding the maximum number of pets to return. When it is present
+         * the query is paged: the sort order may only be {@link #_ID}, {@link #COLUMN_PET_NAME}
+         * or {@link #COLUMN_PET_BREED} (ascending), and rows are returned in that order with
+         * the id as tie breaker. Breeds compare ignoring the case of ASCII letters.
+         */
+        public static final String QUERY_PARAMETER_LIMIT = "limit";
+
+        /** Query parameter holding the id of the last pet of the previous page. */
+        public static final String QUERY_PARAMETER_AFTER = "after";
+
+        /**
+         * Query parameter holding the sort column value of the last pet of the previous page.
+         * Leave it out when the page is sorted by id, or when that value was null.
+         */
+        public static final String QUERY_PARAMETER_AFTER_KEY = "after_key";
+
+        /**
+         * URI to read every pet as a stream, with
+         * {@link android.content.ContentResolver#openInputStream} or
+         * {@link android.content.ContentResolver#openTypedAssetFileDescriptor}. The rows are
+         * streamed from the database, so memory use does not depend on the number of pets.
+         * The format is {@link #MIME_TYPE_CSV}, unless {@link #MIME_TYPE_BINARY} is asked for
+         * through the MIME type filter or {@link #QUERY_PARAMETER_FORMAT}.
+         */
+        public static final Uri CONTENT_EXPORT_URI = Uri.withAppendedPath(CONTENT_URI, PATH_EXPORT);
+
+        /**
+         * URI to add pets from a stream in either export format, with
+         * {@link android.content.ContentResolver#openOutputStream}. The pets are inserted in
+         * chunks through the bulk insert path as the stream is read, and get new ids. Chunks
+         * already inserted stay when the stream breaks off.
+         */
+        public static final Uri CONTENT_IMPORT_URI = Uri.withAppendedPath(CONTENT_URI, PATH_IMPORT);
+
+        /** MIME types of the export formats */
+        public static final String MIME_TYPE_CSV = "text/csv";
+        public static final String MIME_TYPE_BINARY = "application/vnd.com.example.android.pets.binary";
+
+        /** Query parameter of {@link #CONTENT_EXPORT_URI} choosing the format, csv or binary */
+        public static final String QUERY_PARAMETER_FORMAT = "format";
+        public static final String FORMAT_CSV = "csv";
+        public static final String FORMAT_BINARY = "binary";
+
+        /**
+         * Query parameter of a thumbnail URI with the {@link #COLUMN_PET_PHOTO} the thumbnail
+         * is wanted for, see {@link #buildThumbnailUri(long, String)}.
+         */
+        public static final String QUERY_PARAMETER_PHOTO_HASH = "hash";
 
         /**
          * Unique ID number for the pet ( only for use in the databaase table).
@@ -43,14 +150,34 @@ public final class PetContract {
          *
          * Type: TEXT
          */
-        public final static String COLUMN_PET_NAME  = "name";
+        public final static String COLUMN_PET_NAME  = PetSql.COLUMN_NAME;
 
         /**
-         * Breed of the pet.
+         * Breed of the pet. Breeds are stored once in {@link PetBreedEntry#TABLE_NAME} and
+         * matched ignoring the case of ASCII letters and surrounding blanks, so a pet may
+         * read back the spelling another pet of the breed was saved with. An empty breed is
+         * stored as null.
          *
          * Type: TEXT
          */
-        public final static String COLUMN_PET_BREED = "breed";
+        public final static String COLUMN_PET_BREED = PetSql.COLUMN_BREED;
+
+        /**
+         * Only in {@link #TABLE_NAME}: the {@link PetBreedEntry#_ID} of the breed of the pet,
+         * null if it has none.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_PET_BREED_ID = PetSql.COLUMN_BREED_ID;
+
+        /**
+         * Hash of the photo of the pet, null if it has none. The photo itself is a file
+         * read and written through {@link #buildPhotoUri}, never a column; this one changes
+         * whenever the photo does, so it can key a cache of thumbnails. It cannot be updated.
+         *
+         * Type: TEXT
+         */
+        public final static String COLUMN_PET_PHOTO = PetSql.COLUMN_PHOTO;
 
         /**
          * Gender of the pet.
@@ -60,7 +187,7 @@ public final class PetContract {
          *
          * Type: INTEGER
          */
-        public final static String COLUMN_PET_GENDER = "gender";
+        public final static String COLUMN_PET_GENDER = PetSql.COLUMN_GENDER;
 
         /**
          * Weight of the pet.
@@ -68,7 +195,35 @@ public final class PetContract {
          * Type: INTEGER
          *
          */
-        public final static String COLUMN_PET_WEIGHT = "weight";
+        public final static String COLUMN_PET_WEIGHT = PetSql.COLUMN_WEIGHT;
+
+        /**
+         * Selection for a compare-and-set of the weight. Updating a pet URI with this selection
+         * and the expected weight as argument changes the pet only if it still has that weight,
+         * the update then returns 1, otherwise 0. On {@link #CONTENT_URI} it updates every pet
+         * with that weight.
+         */
+        public static final String SELECTION_WEIGHT_EQUALS = COLUMN_PET_WEIGHT + "=?";
+
+        /** Selection of the pets of the gender given as argument */
+        public static final String SELECTION_GENDER_EQUALS = COLUMN_PET_GENDER + "=?";
+
+        /** Selection of the pets of the breed named by the argument */
+        public static final String SELECTION_BREED_EQUALS = COLUMN_PET_BREED + "=?";
+
+        // Projections for pet queries. The narrower the projection, the more rows fit into
+        // each cursor window the provider sends back; ask for the smallest one that is enough.
+        /** Id and name, for lists that only show the name */
+        public static final String[] PROJECTION_ID_NAME = { _ID, COLUMN_PET_NAME };
+        /** Id, name, breed and photo hash, for the catalog list */
+        public static final String[] PROJECTION_LIST = { _ID, COLUMN_PET_NAME, COLUMN_PET_BREED,
+                COLUMN_PET_PHOTO };
+        /**
+         * Every column of a pet but {@link #COLUMN_PET_PHOTO}, which only the catalog list
+         * needs; a single pet with these columns is answered from the provider's cache.
+         */
+        public static final String[] PROJECTION_ALL = { _ID, COLUMN_PET_NAME, COLUMN_PET_BREED,
+                COLUMN_PET_GENDER, COLUMN_PET_WEIGHT };
 
         /**
          * Possible values for the gender of the pet.
@@ -78,6 +233,87 @@ public final class PetContract {
         public static final int GENDER_MALE = 1;
         public static final int GENDER_FEMALE = 2;
 
+        /**
+         * Build the URI for the first page of pets.
+         */
+        public static Uri buildPageUri(int limit) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+                    .build();
+        }
+
+        /**
+         * Build the URI for the page following the pet with the given id and sort value.
+         * Pass a null afterKey when the page is sorted by id.
+         */
+        public static Uri buildPageUri(int limit, long afterId, String afterKey) {
+            Uri.Builder builder = CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+                    .appendQueryParameter(QUERY_PARAMETER_AFTER, String.valueOf(afterId));
+            if( afterKey != null ) {
+                builder.appendQueryParameter(QUERY_PARAMETER_AFTER_KEY, afterKey);
+            }
+            return builder.build();
+        }
+
+        /**
+         * Build the URI of the pets of the given gender weighing minWeight to maxWeight.
+         * @param gender one of the GENDER_ constants, or -1 for any gender
+         */
+        public static Uri buildFilterUri(int gender, int minWeight, int maxWeight) {
+            Uri.Builder builder = CONTENT_FILTER_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_MIN_WEIGHT, String.valueOf(minWeight))
+                    .appendQueryParameter(QUERY_PARAMETER_MAX_WEIGHT, String.valueOf(maxWeight));
+            if( gender != -1 ) {
+                builder.appendQueryParameter(QUERY_PARAMETER_GENDER, String.valueOf(gender));
+            }
+            return builder.build();
+        }
+
+        /**
+         * Build the URI of the photo of a pet. Open it for reading with
+         * {@code ContentResolver.openFileDescriptor}, the descriptor is of the photo file
+         * itself. Open it in mode "w" and write an image to replace the photo; it is stored,
+         * and the pet notified, once the descriptor is closed.
+         */
+        public static Uri buildPhotoUri(long id) {
+            return CONTENT_URI.buildUpon().appendPath(String.valueOf(id))
+                    .appendPath(PATH_PHOTO).build();
+        }
+
+        /**
+         * Build the URI of the thumbnail of the photo of a pet, a JPEG of at most
+         * {@link #THUMBNAIL_SIZE} pixels a side. It can only be read.
+         */
+        public static Uri buildThumbnailUri(long id) {
+            return CONTENT_URI.buildUpon().appendPath(String.valueOf(id))
+                    .appendPath(PATH_THUMBNAIL).build();
+        }
+
+        /**
+         * Build the URI of the thumbnail of one photo of a pet, given by its
+         * {@link #COLUMN_PET_PHOTO}. Opening it fails with a FileNotFoundException once the
+         * pet has another photo, so a cache keyed by the hash never gets a newer thumbnail.
+         */
+        public static Uri buildThumbnailUri(long id, String photoHash) {
+            return buildThumbnailUri(id).buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_PHOTO_HASH, photoHash).build();
+        }
+
+        /** Size in pixels of the longer side of a thumbnail */
+        public static final int THUMBNAIL_SIZE = 192;
+
+        /** MIME type of the thumbnails */
+        public static final String MIME_TYPE_THUMBNAIL = "image/jpeg";
+
+        /**
+         * Build the URI searching for pets whose name or breed contains words
+         * starting with the words of the given text.
+         */
+        public static Uri buildSearchUri(String text) {
+            return CONTENT_SEARCH_URI.buildUpon().appendPath(text).build();
+        }
+
         public static boolean isValidGender(Integer gender) {
 
             if( gender == PetEntry.GENDER_FEMALE || gender == PetEntry.GENDER_MALE ||
@@ -89,4 +325,280 @@ public final class PetContract {
             }
         }
     }
+
+    /**
+     * Aggregate statistics over the pets table. A query on {@link #CONTENT_URI} returns one
+     * row per group, all computed by the database in a single grouped query: one
+     * {@link #GROUP_TOTAL} row, one {@link #GROUP_GENDER} row per gender and one
+     * {@link #GROUP_BREED} row per breed. The projection, selection and sort order of the
+     * query are ignored.
+     */
+    public static final class PetStatsEntry {
+
+        /** URI of the statistics of the pets */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(PetEntry.CONTENT_URI, PATH_STATS);
+
+        /**
+         * Kind of group of the row, one of {@link #GROUP_TOTAL}, {@link #GROUP_GENDER}
+         * or {@link #GROUP_BREED}.
+         *
+         * Type: TEXT
+         */
+        public static final String COLUMN_GROUP = "stats_group";
+
+        /**
+         * The gender or breed of the group, null for the total.
+         *
+         * Type: INTEGER for a gender, TEXT for a breed
+         */
+        public static final String COLUMN_KEY = "stats_key";
+
+        /**
+         * Number of pets in the group.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_COUNT = "pet_count";
+
+        /**
+         * Lowest, average and highest weight of the pets in the group.
+         *
+         * Type: INTEGER for min and max, REAL for the average
+         */
+        public static final String COLUMN_MIN_WEIGHT = "min_weight";
+        public static final String COLUMN_AVG_WEIGHT = "avg_weight";
+        public static final String COLUMN_MAX_WEIGHT = "max_weight";
+
+        /**
+         * Possible values of {@link #COLUMN_GROUP}.
+         */
+        public static final String GROUP_TOTAL = "total";
+        public static final String GROUP_GENDER = "gender";
+        public static final String GROUP_BREED = "breed";
+
+        private PetStatsEntry() {}
+    }
+
+    /**
+     * Latency and row counters of the pets provider, one row per operation and URI that was
+     * called. Query {@link #CONTENT_URI} to read them, update it with {@link #COLUMN_ENABLED}
+     * to switch recording on or off, delete it to reset the counters. The same numbers are
+     * printed by {@code adb shell dumpsys activity provider com.example.android.pets}.
+     */
+    public static final class PetMetricsEntry {
+
+        /** URI of the provider metrics */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(PetEntry.CONTENT_URI, PATH_METRICS);
+
+        /**
+         * The provider method: query, insert, bulkInsert, update, delete or call.
+         *
+         * Type: TEXT
+         */
+        public static final String COLUMN_OPERATION = "operation";
+
+        /**
+         * The URI pattern that was called, e.g. pets/#.
+         *
+         * Type: TEXT
+         */
+        public static final String COLUMN_MATCH = "match";
+
+        /**
+         * Number of calls, and total number of rows returned or written by them.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_COUNT = "call_count";
+        public static final String COLUMN_ROWS = "row_count";
+
+        /**
+         * Total latency of the calls, estimated median and 99th percentile latency, and the
+         * longest latency, in microseconds.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_TOTAL_MICROS = "total_us";
+        public static final String COLUMN_P50_MICROS = "p50_us";
+        public static final String COLUMN_P99_MICROS = "p99_us";
+        public static final String COLUMN_MAX_MICROS = "max_us";
+
+        /**
+         * Only for updates of {@link #CONTENT_URI}: whether the metrics are recorded.
+         *
+         * Type: INTEGER (boolean)
+         */
+        public static final String COLUMN_ENABLED = "enabled";
+
+        private PetMetricsEntry() {}
+    }
+
+    /**
+     * The distinct breeds of the pets, referenced by {@link PetEntry#COLUMN_PET_BREED_ID}.
+     */
+    public static final class PetBreedEntry implements BaseColumns {
+
+        /** Name of the database table for breeds */
+        public static final String TABLE_NAME = "breeds";
+
+        /**
+         * Name of the breed, unique ignoring the case of ASCII letters.
+         *
+         * Type: TEXT
+         */
+        public static final String COLUMN_BREED_NAME = "name";
+
+        private PetBreedEntry() {}
+    }
+
+    /**
+     * Journal of the changes to the pets, to mirror the pets table incrementally. Every
+     * insert, update and delete of a pet appends a row with a new sequence number, higher
+     * than any before it. A mirror queries {@link #buildChangesUri} with the highest sequence
+     * number it has applied and gets the changes after it, oldest first, one bounded page at
+     * a time. Pets that existed before the journal was added are recorded as inserts.
+     *
+     * Inserts and updates carry the current values of the pet, so a mirror should apply them
+     * as upserts; deletes only carry the id. Deleting {@link #CONTENT_URI} compacts the
+     * journal, keeping only the latest change of every pet, and returns the number of changes
+     * removed. Deletes are kept for {@link #DELETE_RETENTION_SECONDS} only, a mirror that
+     * last synced before an expired delete gets {@link #OPERATION_RESET} instead.
+     */
+    public static final class PetChangeEntry {
+
+        /** URI of the journal, use {@link #buildChangesUri} to query it */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(PetEntry.CONTENT_URI, PATH_CHANGES);
+
+        /** Name of the journal table */
+        public static final String TABLE_NAME = PetSql.CHANGES_TABLE;
+
+        /**
+         * Name of the one-row table holding the highest sequence number of the expired
+         * deletes, in {@link #COLUMN_SEQ}. A mirror that synced before it may have missed
+         * deletes.
+         */
+        public static final String HORIZON_TABLE_NAME = PetSql.HORIZON_TABLE;
+
+        /** How long a delete stays in the journal, in seconds */
+        public static final long DELETE_RETENTION_SECONDS = 30L * 24 * 60 * 60;
+
+        /** Query parameter holding the sequence number to return the changes after */
+        public static final String QUERY_PARAMETER_SINCE = "since";
+
+        /**
+         * Query parameter holding the maximum number of changes to return, at most
+         * {@link #MAX_PAGE_SIZE}; {@link #DEFAULT_PAGE_SIZE} when it is missing.
+         */
+        public static final String QUERY_PARAMETER_LIMIT = PetEntry.QUERY_PARAMETER_LIMIT;
+        public static final int DEFAULT_PAGE_SIZE = 500;
+        public static final int MAX_PAGE_SIZE = 5000;
+
+        /**
+         * Sequence number of the change. The columns of a query are this one,
+         * {@link #COLUMN_PET_ID}, {@link #COLUMN_OPERATION} and the columns of
+         * {@link PetEntry#PROJECTION_ALL} but {@link PetEntry#_ID}, then
+         * {@link PetEntry#COLUMN_PET_PHOTO}, whatever the projection.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_SEQ = PetSql.COLUMN_SEQ;
+
+        /**
+         * Id of the changed pet.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_PET_ID = PetSql.COLUMN_PET_ID;
+
+        /**
+         * Kind of change, one of {@link #OPERATION_INSERT}, {@link #OPERATION_UPDATE},
+         * {@link #OPERATION_DELETE} or {@link #OPERATION_RESET}.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_OPERATION = PetSql.COLUMN_OPERATION;
+
+        /**
+         * Time of the change in seconds since the epoch, only used to expire the deletes.
+         * It is not part of the columns of a query.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_TIME = PetSql.COLUMN_TIME;
+
+        /**
+         * Possible values of {@link #COLUMN_OPERATION}.
+         */
+        public static final int OPERATION_INSERT = PetSql.OPERATION_INSERT;
+        public static final int OPERATION_UPDATE = PetSql.OPERATION_UPDATE;
+        public static final int OPERATION_DELETE = PetSql.OPERATION_DELETE;
+
+        /**
+         * Returned alone, with no pet, when deletes after the sequence number of the query
+         * have expired. The mirror has to replace its pets with a query of
+         * {@link PetEntry#CONTENT_URI}, then go on from the sequence number of the reset.
+         */
+        public static final int OPERATION_RESET = PetSql.OPERATION_RESET;
+
+        /**
+         * Build the URI for the first page of changes after the given sequence number,
+         * 0 for the whole journal.
+         */
+        public static Uri buildChangesUri(long since, int limit) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_SINCE, String.valueOf(since))
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+                    .build();
+        }
+
+        private PetChangeEntry() {}
+    }
+
+    /**
+     * Compound operations run by the provider in one call, through
+     * {@code ContentResolver.call(PetEntry.CONTENT_URI, method, arg, extras)}. Each does in a
+     * single round trip what would otherwise take a write followed by a query. Results come
+     * back in a Bundle under the KEY_ constants below; invalid values throw
+     * IllegalArgumentException, as the other provider operations do.
+     */
+    public static final class PetCallEntry {
+
+        /**
+         * Insert or update a pet and return it as stored. The extras hold the values under
+         * the column names of {@link PetEntry}. Without {@link PetEntry#_ID} the pet is
+         * inserted and every value of an insert is required. With it, the pet with that id is
+         * updated with the given values, or inserted under that id if there is none. The
+         * result holds the columns of {@link PetEntry#PROJECTION_ALL} and {@link #KEY_INSERTED}.
+         */
+        public static final String METHOD_UPSERT_AND_FETCH = "upsertAndFetch";
+
+        /**
+         * Count the pets matching the selection given as arg, with its single argument under
+         * {@link #KEY_SELECTION_ARGS}. The selection has to be one of
+         * {@link PetEntry#SELECTION_WEIGHT_EQUALS}, {@link PetEntry#SELECTION_GENDER_EQUALS}
+         * or {@link PetEntry#SELECTION_BREED_EQUALS}; a null arg counts every pet. The result
+         * holds {@link #KEY_COUNT}.
+         */
+        public static final String METHOD_COUNT_WHERE = "countWhere";
+
+        /**
+         * Look up a pet by the exact name given as arg. The result holds {@link #KEY_EXISTS},
+         * and under {@link PetEntry#_ID} the lowest id of the pets with that name, -1 if none.
+         */
+        public static final String METHOD_EXISTS_BY_NAME = "existsByName";
+
+        /** Extra of {@link #METHOD_COUNT_WHERE} holding the selection arguments, String[] */
+        public static final String KEY_SELECTION_ARGS = "selection_args";
+
+        /** Result of {@link #METHOD_UPSERT_AND_FETCH}, whether the pet was inserted, boolean */
+        public static final String KEY_INSERTED = "inserted";
+
+        /** Result of {@link #METHOD_COUNT_WHERE}, the number of matching pets, long */
+        public static final String KEY_COUNT = "count";
+
+        /** Result of {@link #METHOD_EXISTS_BY_NAME}, whether a pet has the name, boolean */
+        public static final String KEY_EXISTS = "exists";
+
+        private PetCallEntry() {}
+    }
 }
@@ -0,0 +1,58 @@
+package com.example.android.pets.data;
+
+import android.database.Cursor;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+/**
+ * Reads the rows of a pets cursor into {@link Pet} records. The column indexes are looked up
+ * once, when the mapper is created, so reading a row is only the typed cursor getters.
+ *
+ * The cursor may hold any subset of the pet columns, e.g. one of the projections of
+ * {@link PetEntry}; a column that is missing reads as null or 0.
+ */
+public final class PetCursorMapper {
+
+    private final Cursor mCursor;
+    private final int mIdIndex;
+    private final int mNameIndex;
+    private final int mBreedIndex;
+    private final int mGenderIndex;
+    private final int mWeightIndex;
+
+    public PetCursorMapper(Cursor cursor) {
+        mCursor = cursor;
+        mIdIndex = cursor.getColumnIndex(PetEntry._ID);
+        mNameIndex = cursor.getColumnIndex(PetEntry.COLUMN_PET_NAME);
+        mBreedIndex = cursor.getColumnIndex(PetEntry.COLUMN_PET_BREED);
+        mGenderIndex = cursor.getColumnIndex(PetEntry.COLUMN_PET_GENDER);
+        mWeightIndex = cursor.getColumnIndex(PetEntry.COLUMN_PET_WEIGHT);
+    }
+
+    /**
+     * Returns the pet at the current position of the cursor.
+     */
+    public Pet read() {
+        Cursor cursor = mCursor;
+        return new Pet(
+                mIdIndex < 0 ? 0 : cursor.getLong(mIdIndex),
+                mNameIndex < 0 ? null : cursor.getString(mNameIndex),
+                mBreedIndex < 0 ? null : cursor.getString(mBreedIndex),
+                mGenderIndex < 0 ? PetEntry.GENDER_UNKNOWN : cursor.getInt(mGenderIndex),
+                mWeightIndex < 0 ? 0 : cursor.getInt(mWeightIndex));
+    }
+
+    /**
+     * Returns the id at the current position of the cursor, without building a {@link Pet}.
+     */
+    public long readId() {
+        return mCursor.getLong(mIdIndex);
+    }
+
+    /**
+     * Returns the name at the current position of the cursor, without building a {@link Pet}.
+     */
+    public String readName() {
+        return mCursor.getString(mNameIndex);
+    }
+}
@@ -3,6 +3,8 @@ package com.example.android.pets.data;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import com.example.android.pets.data.PetContract.PetBreedEntry;
 import com.example.android.pets.data.PetContract.PetEntry;
 import android.util.Log;
 
@@ -17,31 +19,213 @@ public class PetDbHelper extends SQLiteOpenHelper {
 
     private static final String LOG_TAG = PetDbHelper.class.getSimpleName();
     private static final String DATABASE_NAME = "shelter.db";
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 8;
 
-    public PetDbHelper(Context context ) {
+    /** The single helper, and so the single connection pool, shared by the whole process */
+    private static PetDbHelper sInstance;
+
+    /**
+     * Returns the helper that owns the connections to {@code shelter.db}. Everything in the
+     * process goes through this instance so readers and writers share one connection pool
+     * instead of competing through separate helpers.
+     */
+    public static synchronized PetDbHelper getInstance(Context context) {
+        if( sInstance == null ) {
+            sInstance = new PetDbHelper(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private PetDbHelper(Context context ) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // With write-ahead logging readers keep reading the last committed state
+        // while a writer is busy, instead of waiting for the writer to finish.
+        if( Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ) {
+            setWriteAheadLoggingEnabled(true);
+        }
+    }
 
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        // In WAL mode NORMAL only syncs at checkpoints, a commit never loses
+        // consistency and no longer pays for a sync of its own.
+        db.execSQL("PRAGMA synchronous = NORMAL;");
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        // onConfigure and setWriteAheadLoggingEnabled only exist from Jelly Bean on
+        if( Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN && !db.isReadOnly() ) {
+            db.enableWriteAheadLogging();
+            db.execSQL("PRAGMA synchronous = NORMAL;");
+        }
     }
     @Override
     public void onCreate(SQLiteDatabase db){
+        createBreedsTable(db);
         // Create a String that contains the SQL statement to create the pets
         String SQL_CREATE_PETS_TABLE = "CREATE TABLE " + PetEntry.TABLE_NAME
                 + " ( " + PetEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
                 + PetEntry.COLUMN_PET_NAME + " TEXT NOT NULL, "
-                + PetEntry.COLUMN_PET_BREED + " TEXT, "
+                + PetEntry.COLUMN_PET_BREED_ID + " INTEGER REFERENCES "
+                + PetBreedEntry.TABLE_NAME + "(" + PetBreedEntry._ID + "), "
                 + PetEntry.COLUMN_PET_GENDER + " INTEGER NOT NULL, "
-                + PetEntry.COLUMN_PET_WEIGHT + " INTEGER NOT NULL DEFAULT 0);";
+                + PetEntry.COLUMN_PET_WEIGHT + " INTEGER NOT NULL DEFAULT 0, "
+                + PetEntry.COLUMN_PET_PHOTO + " TEXT);";
         Log.i(LOG_TAG, SQL_CREATE_PETS_TABLE);
         // Execute SQL statement
         db.execSQL(SQL_CREATE_PETS_TABLE);
+        createPetsView(db, false);
+        createIndexes(db);
+        createSearchIndex(db);
+        createChangeLog(db);
+        PetMigrations.onCreate(db);
     }
 
+    /**
+     * Only the schema changes of the migrations run here, see {@link PetMigrations}. The
+     * pets they have to rewrite are migrated later by {@link #runPendingMigrations}.
+     */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // The database is still at version 1, so there's nothing to do be done
-        // here .
+        PetMigrations.upgrade(db, oldVersion, newVersion);
+    }
+
+    /**
+     * Migrate the pets left over by the last upgrade, in chunks, while the database stays
+     * usable. Resumes where a previous run stopped. Call it on a background thread.
+     */
+    public void runPendingMigrations(PetMigrations.ProgressListener listener) {
+        SQLiteDatabase db = getWritableDatabase();
+        if( PetMigrations.hasPendingWork(db) ) {
+            PetMigrations.runPendingWork(db, listener);
+        }
+    }
+
+    /**
+     * Returns true if pets of the last upgrade are still left to migrate.
+     */
+    public boolean hasPendingMigrations() {
+        return PetMigrations.hasPendingWork(getWritableDatabase());
+    }
+
+    /**
+     * Create the table of the distinct breeds. Names are unique ignoring the case of ASCII
+     * letters, like the in-memory lookup of {@link PetBreeds}.
+     */
+    static void createBreedsTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + PetBreedEntry.TABLE_NAME + " ("
+                + PetBreedEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + PetBreedEntry.COLUMN_BREED_NAME + " TEXT NOT NULL COLLATE NOCASE);");
+        db.execSQL("CREATE UNIQUE INDEX " + PetEntry.INDEX_BREED_NAME + " ON "
+                + PetBreedEntry.TABLE_NAME + " (" + PetBreedEntry.COLUMN_BREED_NAME + ");");
+    }
+
+    /**
+     * Create, or replace, the view of the pets with their breed name. While an upgraded
+     * database still has pets with the old breed text, see {@link PetMigrations}, the view
+     * falls back to that text for them. Upgrades from before version 6 create it before the
+     * photo column exists, the photo then reads as null until version 6 replaces the view.
+     */
+    static void createPetsView(SQLiteDatabase db, boolean legacyBreed) {
+        String breed = "b." + PetBreedEntry.COLUMN_BREED_NAME;
+        if( legacyBreed ) {
+            breed = "COALESCE(" + breed + ", p." + PetEntry.COLUMN_PET_BREED + ")";
+        }
+        String photo = "NULL";
+        if( PetMigrations.hasColumn(db, PetEntry.TABLE_NAME, PetEntry.COLUMN_PET_PHOTO) ) {
+            photo = "p." + PetEntry.COLUMN_PET_PHOTO;
+        }
+        db.execSQL("DROP VIEW IF EXISTS " + PetEntry.VIEW_NAME + ";");
+        db.execSQL("CREATE VIEW " + PetEntry.VIEW_NAME + " AS SELECT p." + PetEntry._ID + " AS "
+                + PetEntry._ID + ", p." + PetEntry.COLUMN_PET_NAME + " AS "
+                + PetEntry.COLUMN_PET_NAME + ", " + breed + " AS " + PetEntry.COLUMN_PET_BREED
+                + ", p." + PetEntry.COLUMN_PET_GENDER + " AS " + PetEntry.COLUMN_PET_GENDER
+                + ", p." + PetEntry.COLUMN_PET_WEIGHT + " AS " + PetEntry.COLUMN_PET_WEIGHT
+                + ", " + photo + " AS " + PetEntry.COLUMN_PET_PHOTO
+                + " FROM " + PetEntry.TABLE_NAME + " p LEFT JOIN " + PetBreedEntry.TABLE_NAME
+                + " b ON b." + PetBreedEntry._ID + " = p." + PetEntry.COLUMN_PET_BREED_ID + ";");
+    }
+
+    /**
+     * Create the FTS4 table indexing the name and breed of every pet, with the pet id as
+     * docid, and the triggers keeping it in step with the pets table, see {@link PetSql}.
+     */
+    static void createSearchIndex(SQLiteDatabase db) {
+        db.execSQL(PetSql.CREATE_SEARCH_TABLE);
+        createSearchTriggers(db);
+    }
+
+    /**
+     * Create, or replace, the triggers keeping the full-text index in step with the pets.
+     */
+    static void createSearchTriggers(SQLiteDatabase db) {
+        db.execSQL(PetSql.dropTrigger(PetSql.TRIGGER_SEARCH_INSERT));
+        db.execSQL(PetSql.dropTrigger(PetSql.TRIGGER_SEARCH_UPDATE));
+        db.execSQL(PetSql.dropTrigger(PetSql.TRIGGER_SEARCH_DELETE));
+        db.execSQL(PetSql.CREATE_SEARCH_INSERT_TRIGGER);
+        db.execSQL(PetSql.CREATE_SEARCH_UPDATE_TRIGGER);
+        db.execSQL(PetSql.CREATE_SEARCH_DELETE_TRIGGER);
+    }
+
+    /**
+     * Create the journal of changes to the pets and the triggers appending to it, see
+     * {@link PetSql}.
+     */
+    static void createChangeLog(SQLiteDatabase db) {
+        for( String sql : PetSql.createChangeLog() ) {
+            db.execSQL(sql);
+        }
+    }
+
+    /**
+     * Create the table of the expired deletes of the journal, if there is none yet, with
+     * nothing expired.
+     */
+    static void createChangeHorizon(SQLiteDatabase db) {
+        db.execSQL(PetSql.CREATE_HORIZON_TABLE);
+        db.execSQL(PetSql.INSERT_HORIZON);
+    }
+
+    /**
+     * Create, or replace, the triggers appending to the journal of changes, see
+     * {@link #createChangeUpdateTrigger} for legacyBreed.
+     */
+    static void createChangeTriggers(SQLiteDatabase db, boolean legacyBreed) {
+        db.execSQL(PetSql.dropTrigger(PetSql.TRIGGER_CHANGES_INSERT));
+        db.execSQL(PetSql.dropTrigger(PetSql.TRIGGER_CHANGES_DELETE));
+        db.execSQL(PetSql.CREATE_CHANGES_INSERT_TRIGGER);
+        createChangeUpdateTrigger(db, legacyBreed);
+        db.execSQL(PetSql.CREATE_CHANGES_DELETE_TRIGGER);
+    }
+
+    /**
+     * Create, or replace, the trigger logging the updates of the pets, see
+     * {@link PetSql#createChangesUpdateTrigger} for legacyBreed.
+     */
+    static void createChangeUpdateTrigger(SQLiteDatabase db, boolean legacyBreed) {
+        db.execSQL(PetSql.dropTrigger(PetSql.TRIGGER_CHANGES_UPDATE));
+        db.execSQL(PetSql.createChangesUpdateTrigger(legacyBreed));
+    }
 
+    /**
+     * Create the indexes backing keyset pagination by name and breed, and the
+     * gender / weight filters. The _id column is part of the name and breed indexes
+     * so a page can be read in index order without a separate sort; pages by breed walk
+     * the breeds in name order and the pets of each breed through the breed index. The
+     * weight in the breed index lets the statistics per breed read only that index.
+     */
+    static void createIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + PetEntry.INDEX_NAME + " ON "
+                + PetEntry.TABLE_NAME + " (" + PetEntry.COLUMN_PET_NAME + ", " + PetEntry._ID + ");");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + PetEntry.INDEX_BREED + " ON "
+                + PetEntry.TABLE_NAME + " (" + PetEntry.COLUMN_PET_BREED_ID + ", "
+                + PetEntry._ID + ", " + PetEntry.COLUMN_PET_WEIGHT + ");");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + PetEntry.INDEX_GENDER_WEIGHT + " ON "
+                + PetEntry.TABLE_NAME + " (" + PetEntry.COLUMN_PET_GENDER + ", "
+                + PetEntry.COLUMN_PET_WEIGHT + ");");
     }
 
 }
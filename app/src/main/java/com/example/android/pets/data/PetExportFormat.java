@@ -0,0 +1,277 @@
+package com.example.android.pets.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Streaming CSV and binary encodings of the pets table, used by the export and import URIs
+ * of {@link PetProvider}. Rows are written and read one at a time, so memory use does not
+ * depend on the number of pets.
+ *
+ * Both formats carry the columns {@link PetEntry#_ID}, name, breed, gender and weight.
+ * The CSV format has a header line and quotes fields as in RFC 4180, an empty breed stands
+ * for a null one. The binary format starts with {@link #MAGIC} and {@link #VERSION}, then
+ * each pet is a 1 byte followed by the id (long), the name (UTF-8 bytes prefixed with their
+ * count as an int), a breed flag (boolean) and breed, the gender (byte) and the weight (int).
+ * A 0 byte ends the stream. Version 1 wrote the strings as modified UTF-8 with a 16-bit
+ * length, which cannot hold one over 64KB; it is still read.
+ */
+final class PetExportFormat {
+
+    /** First bytes of a binary export: "PETS" */
+    static final int MAGIC = 0x50455453;
+    static final int VERSION = 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Columns of the export, in order; the cursors passed in must have them in this order */
+    static final String[] COLUMNS = { PetEntry._ID, PetEntry.COLUMN_PET_NAME,
+            PetEntry.COLUMN_PET_BREED, PetEntry.COLUMN_PET_GENDER, PetEntry.COLUMN_PET_WEIGHT };
+
+    private PetExportFormat() {}
+
+    /**
+     * Write every row of the cursor as CSV. Returns the number of pets written.
+     */
+    static int writeCsv(Cursor cursor, OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(new BufferedOutputStream(out, BUFFER_SIZE), UTF_8);
+        writer.write(PetEntry._ID + "," + PetEntry.COLUMN_PET_NAME + ","
+                + PetEntry.COLUMN_PET_BREED + "," + PetEntry.COLUMN_PET_GENDER + ","
+                + PetEntry.COLUMN_PET_WEIGHT + "\n");
+        int count = 0;
+        StringBuilder line = new StringBuilder();
+        while( cursor.moveToNext() ) {
+            line.setLength(0);
+            line.append(cursor.getLong(0)).append(',');
+            appendCsvField(line, cursor.getString(1));
+            line.append(',');
+            if( !cursor.isNull(2) ) {
+                appendCsvField(line, cursor.getString(2));
+            }
+            line.append(',').append(cursor.getInt(3)).append(',').append(cursor.getInt(4))
+                    .append('\n');
+            writer.write(line.toString());
+            count++;
+        }
+        writer.flush();
+        return count;
+    }
+
+    /**
+     * Write every row of the cursor in the binary format. Returns the number of pets written.
+     */
+    static int writeBinary(Cursor cursor, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        int count = 0;
+        while( cursor.moveToNext() ) {
+            data.writeByte(1);
+            data.writeLong(cursor.getLong(0));
+            writeString(data, cursor.getString(1));
+            boolean hasBreed = !cursor.isNull(2);
+            data.writeBoolean(hasBreed);
+            if( hasBreed ) {
+                writeString(data, cursor.getString(2));
+            }
+            data.writeByte(cursor.getInt(3));
+            data.writeInt(cursor.getInt(4));
+            count++;
+        }
+        data.writeByte(0);
+        data.flush();
+        return count;
+    }
+
+    private static void writeString(DataOutputStream data, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static void appendCsvField(StringBuilder line, String value) {
+        if( value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+                && value.indexOf('\r') < 0 ) {
+            line.append(value);
+            return;
+        }
+        line.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    /**
+     * Reads pets back from an export, one at a time.
+     */
+    abstract static class PetReader {
+        /**
+         * Returns the next pet as content values for an insert, without its id, or null at the
+         * end of the stream.
+         */
+        abstract ContentValues next() throws IOException;
+    }
+
+    /**
+     * Open a reader for an export in either format, told apart by the binary magic.
+     */
+    static PetReader openReader(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        buffered.mark(4);
+        DataInputStream data = new DataInputStream(buffered);
+        int magic;
+        try {
+            magic = data.readInt();
+        } catch (IOException e) {
+            magic = 0;
+        }
+        if( magic == MAGIC ) {
+            int version = data.readInt();
+            if( version != 1 && version != VERSION ) {
+                throw new IOException("Unsupported pet export version " + version);
+            }
+            return new BinaryReader(data, version);
+        }
+        buffered.reset();
+        return new CsvReader(new BufferedReader(new InputStreamReader(buffered, UTF_8), BUFFER_SIZE));
+    }
+
+    private static final class BinaryReader extends PetReader {
+        private final DataInputStream mData;
+        private final int mVersion;
+
+        BinaryReader(DataInputStream data, int version) {
+            mData = data;
+            mVersion = version;
+        }
+
+        @Override
+        ContentValues next() throws IOException {
+            if( mData.readByte() == 0 ) {
+                return null;
+            }
+            mData.readLong();
+            ContentValues values = new ContentValues(4);
+            values.put(PetEntry.COLUMN_PET_NAME, readString());
+            values.put(PetEntry.COLUMN_PET_BREED, mData.readBoolean() ? readString() : null);
+            values.put(PetEntry.COLUMN_PET_GENDER, (int) mData.readByte());
+            values.put(PetEntry.COLUMN_PET_WEIGHT, mData.readInt());
+            return values;
+        }
+
+        private String readString() throws IOException {
+            if( mVersion == 1 ) {
+                return mData.readUTF();
+            }
+            int length = mData.readInt();
+            if( length < 0 ) {
+                throw new IOException("Invalid string length " + length);
+            }
+            byte[] bytes = new byte[length];
+            mData.readFully(bytes);
+            return new String(bytes, UTF_8);
+        }
+    }
+
+    private static final class CsvReader extends PetReader {
+        private final BufferedReader mReader;
+        private final String[] mFields = new String[COLUMNS.length];
+        private boolean mHeaderSkipped;
+
+        CsvReader(BufferedReader reader) {
+            mReader = reader;
+        }
+
+        @Override
+        ContentValues next() throws IOException {
+            if( !mHeaderSkipped ) {
+                mHeaderSkipped = true;
+                if( !readRecord() ) {
+                    return null;
+                }
+            }
+            if( !readRecord() ) {
+                return null;
+            }
+            ContentValues values = new ContentValues(4);
+            values.put(PetEntry.COLUMN_PET_NAME, mFields[1]);
+            values.put(PetEntry.COLUMN_PET_BREED, mFields[2].isEmpty() ? null : mFields[2]);
+            try {
+                values.put(PetEntry.COLUMN_PET_GENDER, Integer.parseInt(mFields[3]));
+                values.put(PetEntry.COLUMN_PET_WEIGHT, Integer.parseInt(mFields[4]));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid pet record " + mFields[0], e);
+            }
+            return values;
+        }
+
+        /**
+         * Read one record into {@link #mFields}, skipping blank lines. Returns false at the end
+         * of the stream.
+         */
+        private boolean readRecord() throws IOException {
+            int c = mReader.read();
+            // blank lines, e.g. a trailing one, hold no pet
+            while( c == '\n' || c == '\r' ) {
+                c = mReader.read();
+            }
+            if( c == -1 ) {
+                return false;
+            }
+            StringBuilder field = new StringBuilder();
+            int index = 0;
+            boolean quoted = false;
+            while( true ) {
+                if( quoted ) {
+                    if( c == -1 ) {
+                        throw new IOException("Unterminated quoted field");
+                    }
+                    if( c == '"' ) {
+                        mReader.mark(1);
+                        int next = mReader.read();
+                        if( next == '"' ) {
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                            mReader.reset();
+                        }
+                    } else {
+                        field.append((char) c);
+                    }
+                } else if( c == '"' && field.length() == 0 ) {
+                    quoted = true;
+                } else if( c == ',' || c == '\n' || c == -1 ) {
+                    if( index < mFields.length ) {
+                        mFields[index] = field.toString();
+                    }
+                    index++;
+                    field.setLength(0);
+                    if( c != ',' ) {
+                        break;
+                    }
+                } else if( c != '\r' ) {
+                    field.append((char) c);
+                }
+                c = mReader.read();
+            }
+            if( index != mFields.length ) {
+                throw new IOException("Pet record has " + index + " fields instead of "
+                        + mFields.length);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.android.pets.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.SystemClock;
+
+import com.example.android.pets.data.PetContract.PetMetricsEntry;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency and row counters of {@link PetProvider}, per operation and per URI match.
+ *
+ * Recording costs two clock reads and a few atomic adds, and nothing at all while disabled.
+ * Latencies go into a histogram of power-of-two microsecond buckets, from which percentiles
+ * are estimated. The slowest calls are kept as samples, so a slow caller can be identified.
+ */
+final class PetMetrics {
+
+    /** Operations of the provider */
+    static final int OP_QUERY = 0;
+    static final int OP_INSERT = 1;
+    static final int OP_BULK_INSERT = 2;
+    static final int OP_UPDATE = 3;
+    static final int OP_DELETE = 4;
+    static final int OP_CALL = 5;
+    private static final String[] OP_NAMES = { "query", "insert", "bulkInsert", "update", "delete",
+            "call" };
+
+    /** Histogram bucket i counts calls below 2^i microseconds, the last one everything above */
+    private static final int BUCKETS = 24;
+
+    /** Calls taking at least this long are kept as slow samples */
+    private static final long SLOW_NANOS = 50 * 1000 * 1000L;
+
+    /** Number of slow samples kept, the oldest one is replaced first */
+    private static final int SLOW_SAMPLES = 16;
+
+    /** Names of the URI matches, a match is recorded by its index in this array */
+    private final String[] mMatchNames;
+
+    private final AtomicLongArray mCounts;
+    private final AtomicLongArray mRows;
+    private final AtomicLongArray mNanos;
+    private final AtomicLongArray mMaxNanos;
+    private final AtomicLongArray mHistogram;
+
+    /** Ring of slow call descriptions, guarded by itself */
+    private final String[] mSlowSamples = new String[SLOW_SAMPLES];
+    private int mNextSlowSample;
+
+    private volatile boolean mEnabled = true;
+
+    PetMetrics(String[] matchNames) {
+        mMatchNames = matchNames;
+        int slots = OP_NAMES.length * matchNames.length;
+        mCounts = new AtomicLongArray(slots);
+        mRows = new AtomicLongArray(slots);
+        mNanos = new AtomicLongArray(slots);
+        mMaxNanos = new AtomicLongArray(slots);
+        mHistogram = new AtomicLongArray(slots * BUCKETS);
+    }
+
+    boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Turn recording on or off, the counters recorded so far are kept.
+     */
+    void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    /**
+     * Returns the start time to pass to {@link #record}, or 0 when recording is disabled.
+     */
+    long start() {
+        return mEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record a call that began at the given {@link #start} time.
+     * @param operation one of the OP_ constants
+     * @param match     index of the URI match in the names given to the constructor
+     * @param rows      number of rows returned or written
+     */
+    void record(int operation, int match, long start, int rows, Uri uri) {
+        if( start == 0 ) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        int slot = operation * mMatchNames.length + match;
+        mCounts.incrementAndGet(slot);
+        mRows.addAndGet(slot, rows);
+        mNanos.addAndGet(slot, nanos);
+        long max;
+        do {
+            max = mMaxNanos.get(slot);
+        } while( nanos > max && !mMaxNanos.compareAndSet(slot, max, nanos) );
+        mHistogram.incrementAndGet(slot * BUCKETS + bucketOf(nanos));
+
+        if( nanos >= SLOW_NANOS ) {
+            String sample = SystemClock.elapsedRealtime() + " " + OP_NAMES[operation] + " "
+                    + uri + " " + nanos / 1000000 + "ms " + rows + " rows";
+            synchronized (mSlowSamples) {
+                mSlowSamples[mNextSlowSample] = sample;
+                mNextSlowSample = (mNextSlowSample + 1) % SLOW_SAMPLES;
+            }
+        }
+    }
+
+    /**
+     * Clear every counter and sample.
+     */
+    void reset() {
+        for( int i = 0; i < mCounts.length(); i++ ) {
+            mCounts.set(i, 0);
+            mRows.set(i, 0);
+            mNanos.set(i, 0);
+            mMaxNanos.set(i, 0);
+        }
+        for( int i = 0; i < mHistogram.length(); i++ ) {
+            mHistogram.set(i, 0);
+        }
+        synchronized (mSlowSamples) {
+            for( int i = 0; i < SLOW_SAMPLES; i++ ) {
+                mSlowSamples[i] = null;
+            }
+            mNextSlowSample = 0;
+        }
+    }
+
+    /**
+     * Returns the counters as a cursor with the columns of {@link PetMetricsEntry}, one row per
+     * operation and URI match that was called at least once.
+     */
+    Cursor toCursor() {
+        MatrixCursor cursor = new MatrixCursor(new String[] { PetMetricsEntry.COLUMN_OPERATION,
+                PetMetricsEntry.COLUMN_MATCH, PetMetricsEntry.COLUMN_COUNT,
+                PetMetricsEntry.COLUMN_ROWS, PetMetricsEntry.COLUMN_TOTAL_MICROS,
+                PetMetricsEntry.COLUMN_P50_MICROS, PetMetricsEntry.COLUMN_P99_MICROS,
+                PetMetricsEntry.COLUMN_MAX_MICROS });
+        for( int operation = 0; operation < OP_NAMES.length; operation++ ) {
+            for( int match = 0; match < mMatchNames.length; match++ ) {
+                int slot = operation * mMatchNames.length + match;
+                long count = mCounts.get(slot);
+                if( count == 0 ) {
+                    continue;
+                }
+                cursor.addRow(new Object[] { OP_NAMES[operation], mMatchNames[match], count,
+                        mRows.get(slot), mNanos.get(slot) / 1000, percentileMicros(slot, 0.5),
+                        percentileMicros(slot, 0.99), mMaxNanos.get(slot) / 1000 });
+            }
+        }
+        return cursor;
+    }
+
+    /**
+     * Print the counters and the slow samples, for dumpsys.
+     */
+    void dump(PrintWriter writer) {
+        writer.println("Metrics " + (mEnabled ? "enabled" : "disabled"));
+        Cursor cursor = toCursor();
+        try {
+            writer.println("  operation match count rows totalUs p50Us p99Us maxUs");
+            while( cursor.moveToNext() ) {
+                StringBuilder line = new StringBuilder(" ");
+                for( int i = 0; i < cursor.getColumnCount(); i++ ) {
+                    line.append(' ').append(cursor.getString(i));
+                }
+                writer.println(line);
+            }
+        } finally {
+            cursor.close();
+        }
+        writer.println("Slow calls (>= " + SLOW_NANOS / 1000000 + "ms)");
+        synchronized (mSlowSamples) {
+            for( int i = 0; i < SLOW_SAMPLES; i++ ) {
+                String sample = mSlowSamples[(mNextSlowSample + i) % SLOW_SAMPLES];
+                if( sample != null ) {
+                    writer.println("  " + sample);
+                }
+            }
+        }
+    }
+
+    /**
+     * Estimate a latency percentile from the histogram, as the upper bound of its bucket.
+     */
+    private long percentileMicros(int slot, double percentile) {
+        long total = 0;
+        for( int bucket = 0; bucket < BUCKETS; bucket++ ) {
+            total += mHistogram.get(slot * BUCKETS + bucket);
+        }
+        long rank = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for( int bucket = 0; bucket < BUCKETS; bucket++ ) {
+            seen += mHistogram.get(slot * BUCKETS + bucket);
+            if( seen >= rank ) {
+                return 1L << bucket;
+            }
+        }
+        return 1L << (BUCKETS - 1);
+    }
+
+    private static int bucketOf(long nanos) {
+        long micros = nanos / 1000;
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return bucket < BUCKETS ? bucket : BUCKETS - 1;
+    }
+}
@@ -0,0 +1,415 @@
+package com.example.android.pets.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.example.android.pets.data.PetContract.PetBreedEntry;
+import com.example.android.pets.data.PetContract.PetChangeEntry;
+import com.example.android.pets.data.PetContract.PetEntry;
+
+/**
+ * The ordered schema migrations of {@code shelter.db}.
+ *
+ * Each {@link Migration} moves the database up one version in two parts. Its schema change
+ * runs in {@link PetDbHelper#onUpgrade} and has to be quick, since the database cannot be
+ * opened until it finishes: add columns, tables, triggers. Work proportional to the number
+ * of pets, such as filling a new column or copying rows into a rebuilt table, is done
+ * afterwards by {@link #runPendingWork} in chunks of pets, each in its own transaction,
+ * while the app already uses the database. The progress of every chunk is committed with
+ * it, so work interrupted by the process dying resumes where it stopped.
+ *
+ * To change the schema: bump {@link PetDbHelper}'s version, change its onCreate, and add a
+ * migration for the new version at the end of {@link #MIGRATIONS}.
+ */
+final class PetMigrations {
+
+    private static final String LOG_TAG = PetMigrations.class.getSimpleName();
+
+    /** Number of pets handled per transaction by {@link #runPendingWork} */
+    private static final int CHUNK_SIZE = 2000;
+
+    /** Table of the migrations with rows left to migrate, and how far they got */
+    private static final String PROGRESS_TABLE = "migration_progress";
+    private static final String COLUMN_VERSION = "version";
+    private static final String COLUMN_LAST_ID = "last_id";
+    private static final String COLUMN_END_ID = "end_id";
+    private static final String COLUMN_DONE = "done";
+    private static final String COLUMN_TOTAL = "total";
+
+    /**
+     * Receives the progress of the row work of the migrations.
+     */
+    interface ProgressListener {
+        /**
+         * Called after every chunk.
+         * @param version the version the migration moves to
+         * @param done    number of pets migrated so far
+         * @param total   number of pets to migrate
+         */
+        void onMigrationProgress(int version, long done, long total);
+    }
+
+    /**
+     * One step of the schema, from {@code version - 1} to {@code version}.
+     */
+    abstract static class Migration {
+        final int version;
+
+        Migration(int version) {
+            this.version = version;
+        }
+
+        /**
+         * Change the schema, inside the upgrade transaction. Must not visit every pet.
+         */
+        abstract void upgradeSchema(SQLiteDatabase db);
+
+        /**
+         * Whether the migration has per-pet work for {@link #migrateRows}.
+         * The pets inserted after {@link #upgradeSchema} are not part of it, so the new
+         * schema (e.g. triggers) has to take care of them.
+         */
+        boolean hasRowWork() {
+            return false;
+        }
+
+        /**
+         * Migrate the pets with an id in (afterId, upToId], inside a transaction.
+         */
+        void migrateRows(SQLiteDatabase db, long afterId, long upToId) {
+        }
+
+        /**
+         * Called in the transaction of the last chunk, e.g. to swap in a rebuilt table.
+         */
+        void finishRows(SQLiteDatabase db) {
+        }
+    }
+
+    /**
+     * Add a column to a table. SQLite only changes the table definition, existing rows are
+     * not rewritten, so this is quick at any table size.
+     */
+    static void addColumn(SQLiteDatabase db, String table, String columnDefinition) {
+        db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + columnDefinition + ";");
+    }
+
+    /**
+     * Returns true if the table has the column.
+     */
+    static boolean hasColumn(SQLiteDatabase db, String table, String column) {
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ");", null);
+        try {
+            int nameIndex = cursor.getColumnIndexOrThrow("name");
+            while( cursor.moveToNext() ) {
+                if( column.equals(cursor.getString(nameIndex)) ) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /** The migrations, in version order */
+    static final Migration[] MIGRATIONS = {
+            // Version 2 adds the indexes used by the sorted and paged catalog queries. The
+            // breed index is on the breed text of that version, version 5 replaces it.
+            new Migration(2) {
+                @Override
+                void upgradeSchema(SQLiteDatabase db) {
+                    db.execSQL("CREATE INDEX IF NOT EXISTS " + PetEntry.INDEX_NAME + " ON "
+                            + PetEntry.TABLE_NAME + " (" + PetEntry.COLUMN_PET_NAME + ", "
+                            + PetEntry._ID + ");");
+                    db.execSQL("CREATE INDEX IF NOT EXISTS " + PetEntry.INDEX_BREED + " ON "
+                            + PetEntry.TABLE_NAME + " (" + PetEntry.COLUMN_PET_BREED + ", "
+                            + PetEntry._ID + ");");
+                    db.execSQL("CREATE INDEX IF NOT EXISTS " + PetEntry.INDEX_GENDER_WEIGHT
+                            + " ON " + PetEntry.TABLE_NAME + " (" + PetEntry.COLUMN_PET_GENDER
+                            + ", " + PetEntry.COLUMN_PET_WEIGHT + ");");
+                }
+            },
+            // Version 3 adds the full-text search index, filled from the existing pets.
+            new Migration(3) {
+                @Override
+                void upgradeSchema(SQLiteDatabase db) {
+                    PetDbHelper.createSearchIndex(db);
+                }
+
+                @Override
+                boolean hasRowWork() {
+                    return true;
+                }
+
+                @Override
+                void migrateRows(SQLiteDatabase db, long afterId, long upToId) {
+                    db.execSQL("INSERT INTO " + PetEntry.FTS_TABLE_NAME + " (docid, "
+                            + PetEntry.COLUMN_PET_NAME + ", " + PetEntry.COLUMN_PET_BREED
+                            + ") SELECT " + PetEntry._ID + ", " + PetEntry.COLUMN_PET_NAME + ", "
+                            + PetEntry.COLUMN_PET_BREED + " FROM " + PetEntry.VIEW_NAME
+                            + " WHERE " + PetEntry._ID + " > ? AND " + PetEntry._ID + " <= ?;",
+                            new Object[] { afterId, upToId });
+                }
+            },
+            // Version 4 adds the journal of changes, the existing pets are logged as inserts.
+            new Migration(4) {
+                @Override
+                void upgradeSchema(SQLiteDatabase db) {
+                    PetDbHelper.createChangeLog(db);
+                }
+
+                @Override
+                boolean hasRowWork() {
+                    return true;
+                }
+
+                @Override
+                void migrateRows(SQLiteDatabase db, long afterId, long upToId) {
+                    db.execSQL("INSERT INTO " + PetChangeEntry.TABLE_NAME + " ("
+                            + PetChangeEntry.COLUMN_PET_ID + ", " + PetChangeEntry.COLUMN_OPERATION
+                            + ") SELECT " + PetEntry._ID + ", " + PetChangeEntry.OPERATION_INSERT
+                            + " FROM " + PetEntry.TABLE_NAME + " WHERE " + PetEntry._ID
+                            + " > ? AND " + PetEntry._ID + " <= ?;",
+                            new Object[] { afterId, upToId });
+                }
+            },
+            // Version 5 moves the breed text of every pet into the breeds table and points
+            // the pet at it. Until the last chunk, the view of the pets reads the breed from
+            // either place. The breed column is left in the table, with only nulls.
+            new Migration(5) {
+                @Override
+                void upgradeSchema(SQLiteDatabase db) {
+                    PetDbHelper.createBreedsTable(db);
+                    addColumn(db, PetEntry.TABLE_NAME, PetEntry.COLUMN_PET_BREED_ID
+                            + " INTEGER REFERENCES " + PetBreedEntry.TABLE_NAME + "("
+                            + PetBreedEntry._ID + ")");
+                    db.execSQL("DROP INDEX IF EXISTS " + PetEntry.INDEX_BREED + ";");
+                    PetDbHelper.createIndexes(db);
+                    PetDbHelper.createPetsView(db, true);
+                    PetDbHelper.createSearchTriggers(db);
+                    PetDbHelper.createChangeUpdateTrigger(db, true);
+                    // A pet given a breed id before its chunk is migrated drops its old text
+                    db.execSQL("CREATE TRIGGER " + TRIGGER_LEGACY_BREED + " AFTER UPDATE OF "
+                            + PetEntry.COLUMN_PET_BREED_ID + " ON " + PetEntry.TABLE_NAME
+                            + " WHEN new." + PetEntry.COLUMN_PET_BREED + " IS NOT NULL BEGIN UPDATE "
+                            + PetEntry.TABLE_NAME + " SET " + PetEntry.COLUMN_PET_BREED
+                            + " = NULL WHERE " + PetEntry._ID + " = new." + PetEntry._ID + "; END;");
+                }
+
+                @Override
+                boolean hasRowWork() {
+                    return true;
+                }
+
+                @Override
+                void migrateRows(SQLiteDatabase db, long afterId, long upToId) {
+                    Object[] range = { afterId, upToId };
+                    db.execSQL("INSERT OR IGNORE INTO " + PetBreedEntry.TABLE_NAME + " ("
+                            + PetBreedEntry.COLUMN_BREED_NAME + ") SELECT DISTINCT TRIM("
+                            + PetEntry.COLUMN_PET_BREED + ") FROM " + PetEntry.TABLE_NAME
+                            + " WHERE " + PetEntry._ID + " > ? AND " + PetEntry._ID
+                            + " <= ? AND TRIM(" + PetEntry.COLUMN_PET_BREED + ") != '';", range);
+                    db.execSQL("UPDATE " + PetEntry.TABLE_NAME + " SET "
+                            + PetEntry.COLUMN_PET_BREED_ID + " = (SELECT " + PetBreedEntry._ID
+                            + " FROM " + PetBreedEntry.TABLE_NAME + " WHERE "
+                            + PetBreedEntry.COLUMN_BREED_NAME + " = TRIM(" + PetEntry.TABLE_NAME
+                            + "." + PetEntry.COLUMN_PET_BREED + ")), " + PetEntry.COLUMN_PET_BREED
+                            + " = NULL WHERE " + PetEntry._ID + " > ? AND " + PetEntry._ID
+                            + " <= ? AND " + PetEntry.COLUMN_PET_BREED + " IS NOT NULL;", range);
+                }
+
+                @Override
+                void finishRows(SQLiteDatabase db) {
+                    PetDbHelper.createPetsView(db, false);
+                    PetDbHelper.createChangeUpdateTrigger(db, false);
+                    db.execSQL("DROP TRIGGER IF EXISTS " + TRIGGER_LEGACY_BREED + ";");
+                }
+            },
+            // Version 6 adds the hash of the photo of a pet, the photos are files. The view
+            // keeps reading the old breed text while the pets of version 5 are migrated.
+            new Migration(6) {
+                @Override
+                void upgradeSchema(SQLiteDatabase db) {
+                    addColumn(db, PetEntry.TABLE_NAME, PetEntry.COLUMN_PET_PHOTO + " TEXT");
+                    PetDbHelper.createPetsView(db, isPending(db, 5));
+                }
+            },
+            // Version 7 stamps the changes with their time so deletes can expire from the
+            // journal. The changes logged so far default to the time of the upgrade, a
+            // constant default does not rewrite them. Upgrades from before version 4 already
+            // created the journal with the column.
+            new Migration(7) {
+                @Override
+                void upgradeSchema(SQLiteDatabase db) {
+                    if( !hasColumn(db, PetChangeEntry.TABLE_NAME, PetChangeEntry.COLUMN_TIME) ) {
+                        addColumn(db, PetChangeEntry.TABLE_NAME, PetChangeEntry.COLUMN_TIME
+                                + " INTEGER NOT NULL DEFAULT " + System.currentTimeMillis() / 1000);
+                    }
+                    PetDbHelper.createChangeHorizon(db);
+                    PetDbHelper.createChangeTriggers(db, isPending(db, 5));
+                }
+            },
+            // Version 8 logs the photo changes in the journal, so mirrors see them.
+            new Migration(8) {
+                @Override
+                void upgradeSchema(SQLiteDatabase db) {
+                    PetDbHelper.createChangeUpdateTrigger(db, isPending(db, 5));
+                }
+            }
+    };
+
+    /** Trigger of version 5 clearing the old breed text of a pet given a breed id */
+    private static final String TRIGGER_LEGACY_BREED = "pets_legacy_breed";
+
+    private PetMigrations() {}
+
+    /**
+     * Create the bookkeeping of the migrations in a new database.
+     */
+    static void onCreate(SQLiteDatabase db) {
+        createProgressTable(db);
+    }
+
+    /**
+     * Run the schema changes of every migration after oldVersion up to newVersion, and record
+     * the row work they leave for {@link #runPendingWork}. Called inside the upgrade transaction.
+     */
+    static void upgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        createProgressTable(db);
+        for( Migration migration : MIGRATIONS ) {
+            if( migration.version <= oldVersion || migration.version > newVersion ) {
+                continue;
+            }
+            Log.i(LOG_TAG, "Upgrading " + PetEntry.TABLE_NAME + " to version " + migration.version);
+            migration.upgradeSchema(db);
+            if( migration.hasRowWork() ) {
+                // Only the pets that exist now, later ones are handled by the new schema
+                long endId = queryLong(db, "SELECT IFNULL(MAX(" + PetEntry._ID + "), 0) FROM "
+                        + PetEntry.TABLE_NAME, null);
+                long total = queryLong(db, "SELECT COUNT(*) FROM " + PetEntry.TABLE_NAME, null);
+                db.execSQL("INSERT OR REPLACE INTO " + PROGRESS_TABLE + " (" + COLUMN_VERSION
+                        + ", " + COLUMN_LAST_ID + ", " + COLUMN_END_ID + ", " + COLUMN_DONE
+                        + ", " + COLUMN_TOTAL + ") VALUES (?, 0, ?, 0, ?);",
+                        new Object[] { migration.version, endId, total });
+            }
+        }
+    }
+
+    /**
+     * Returns true if the migration to the given version still has pets to migrate.
+     */
+    private static boolean isPending(SQLiteDatabase db, int version) {
+        return queryLong(db, "SELECT COUNT(*) FROM " + PROGRESS_TABLE + " WHERE "
+                + COLUMN_VERSION + " = ?", new String[] { String.valueOf(version) }) > 0;
+    }
+
+    /**
+     * Returns true if some migration still has pets to migrate.
+     */
+    static boolean hasPendingWork(SQLiteDatabase db) {
+        createProgressTable(db);
+        return queryLong(db, "SELECT COUNT(*) FROM " + PROGRESS_TABLE, null) > 0;
+    }
+
+    /**
+     * Do the row work left by the migrations, oldest version first, one chunk of pets per
+     * transaction. Other connections can read and write between the chunks. Call it on a
+     * background thread once the database is open.
+     */
+    static void runPendingWork(SQLiteDatabase db, ProgressListener listener) {
+        createProgressTable(db);
+        for( Migration migration : MIGRATIONS ) {
+            if( !migration.hasRowWork() ) {
+                continue;
+            }
+            boolean pending = true;
+            while( pending ) {
+                pending = migrateChunk(db, migration, listener);
+            }
+        }
+    }
+
+    /**
+     * Migrate the next chunk of pets of the migration. Returns false once it has nothing left.
+     */
+    private static boolean migrateChunk(SQLiteDatabase db, Migration migration,
+                                        ProgressListener listener) {
+        String[] versionArgs = { String.valueOf(migration.version) };
+        long lastId;
+        long endId;
+        long done;
+        long total;
+        long chunkEnd;
+        db.beginTransaction();
+        try {
+            Cursor progress = db.query(PROGRESS_TABLE, new String[] { COLUMN_LAST_ID,
+                    COLUMN_END_ID, COLUMN_DONE, COLUMN_TOTAL }, COLUMN_VERSION + "=?",
+                    versionArgs, null, null, null);
+            try {
+                if( !progress.moveToFirst() ) {
+                    return false;
+                }
+                lastId = progress.getLong(0);
+                endId = progress.getLong(1);
+                done = progress.getLong(2);
+                total = progress.getLong(3);
+            } finally {
+                progress.close();
+            }
+
+            // The chunk ends at the CHUNK_SIZE-th pet after lastId, or at endId
+            chunkEnd = queryLong(db, "SELECT " + PetEntry._ID + " FROM " + PetEntry.TABLE_NAME
+                    + " WHERE " + PetEntry._ID + " > ? AND " + PetEntry._ID + " <= ? ORDER BY "
+                    + PetEntry._ID + " LIMIT 1 OFFSET " + (CHUNK_SIZE - 1),
+                    new String[] { String.valueOf(lastId), String.valueOf(endId) });
+            if( chunkEnd <= 0 ) {
+                chunkEnd = endId;
+            }
+            long count = queryLong(db, "SELECT COUNT(*) FROM " + PetEntry.TABLE_NAME + " WHERE "
+                    + PetEntry._ID + " > ? AND " + PetEntry._ID + " <= ?",
+                    new String[] { String.valueOf(lastId), String.valueOf(chunkEnd) });
+            migration.migrateRows(db, lastId, chunkEnd);
+            done = Math.min(done + count, total);
+
+            if( chunkEnd >= endId ) {
+                // pets deleted in the meantime were counted in the total
+                done = total;
+                migration.finishRows(db);
+                db.delete(PROGRESS_TABLE, COLUMN_VERSION + "=?", versionArgs);
+            } else {
+                db.execSQL("UPDATE " + PROGRESS_TABLE + " SET " + COLUMN_LAST_ID + " = ?, "
+                        + COLUMN_DONE + " = ? WHERE " + COLUMN_VERSION + " = ?;",
+                        new Object[] { chunkEnd, done, migration.version });
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if( listener != null ) {
+            listener.onMigrationProgress(migration.version, done, total);
+        }
+        return chunkEnd < endId;
+    }
+
+    private static void createProgressTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + PROGRESS_TABLE + " (" + COLUMN_VERSION
+                + " INTEGER PRIMARY KEY, " + COLUMN_LAST_ID + " INTEGER NOT NULL, "
+                + COLUMN_END_ID + " INTEGER NOT NULL, " + COLUMN_DONE + " INTEGER NOT NULL, "
+                + COLUMN_TOTAL + " INTEGER NOT NULL);");
+    }
+
+    /**
+     * Returns the first column of the first row of the query, or 0 when there is no row.
+     */
+    private static long queryLong(SQLiteDatabase db, String sql, String[] args) {
+        Cursor cursor = db.rawQuery(sql, args);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package com.example.android.pets.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.v4.util.LongSparseArray;
+import android.util.Log;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The photos of the pets, stored as files, and a disk cache of their thumbnails.
+ *
+ * The pets table only holds the hash of a photo, see {@link PetEntry#COLUMN_PET_PHOTO}, so
+ * cursors and scans never carry image bytes. A photo is the file {@code <id>-<hash>} in the
+ * photos directory. A new photo gets a new file, and the old one is deleted once the table
+ * points at the new one, so a reader never sees a half written photo.
+ *
+ * Thumbnails are generated on first use into the cache directory, under the same name as
+ * their photo. Once they take more than {@link #MAX_THUMBNAIL_BYTES} the least recently
+ * used ones are deleted.
+ */
+final class PetPhotoStore {
+
+    private static final String LOG_TAG = PetPhotoStore.class.getSimpleName();
+
+    /** Largest photo accepted, a bigger one is rejected while it is written */
+    private static final long MAX_PHOTO_BYTES = 16L * 1024 * 1024;
+
+    /** Disk space of the thumbnails, trimmed down to three quarters of it when exceeded */
+    private static final long MAX_THUMBNAIL_BYTES = 8L * 1024 * 1024;
+
+    private static final int THUMBNAIL_QUALITY = 85;
+
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String THUMBNAIL_SUFFIX = ".jpg";
+
+    /** Files younger than this may belong to a write in progress, the sweep leaves them */
+    private static final long SWEEP_MIN_AGE_MILLIS = 60 * 60 * 1000L;
+
+    private static final String SQL_PHOTOS = "SELECT " + PetEntry._ID + ", "
+            + PetEntry.COLUMN_PET_PHOTO + " FROM " + PetEntry.TABLE_NAME + " WHERE "
+            + PetEntry.COLUMN_PET_PHOTO + " IS NOT NULL";
+
+    private final File mPhotoDir;
+    private final File mThumbnailDir;
+
+    /** Bytes of the thumbnails on disk, -1 until first counted, guarded by this */
+    private long mThumbnailBytes = -1;
+
+    PetPhotoStore(Context context) {
+        mPhotoDir = new File(context.getFilesDir(), "photos");
+        mThumbnailDir = new File(context.getCacheDir(), "thumbnails");
+    }
+
+    /**
+     * Returns the file of the photo of the pet with the given hash.
+     */
+    File getPhotoFile(long id, String hash) {
+        return new File(mPhotoDir, id + "-" + hash);
+    }
+
+    private File getThumbnailFile(long id, String hash) {
+        return new File(mThumbnailDir, id + "-" + hash + THUMBNAIL_SUFFIX);
+    }
+
+    /**
+     * Write a new photo of the pet from the stream, and return its hash. The photo is only
+     * stored once it is complete and decodes as an image; store its hash in the pet then.
+     * @throws IOException if the stream fails, or is not an image or too large
+     */
+    String savePhoto(long id, InputStream in) throws IOException {
+        makeDirectory(mPhotoDir);
+        File temp = File.createTempFile(id + "-", TEMP_SUFFIX, mPhotoDir);
+        try {
+            MessageDigest digest = newDigest();
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                byte[] buffer = new byte[8192];
+                long size = 0;
+                int read;
+                while( (read = in.read(buffer)) != -1 ) {
+                    size += read;
+                    if( size > MAX_PHOTO_BYTES ) {
+                        throw new IOException("Photo of pet " + id + " is larger than "
+                                + MAX_PHOTO_BYTES + " bytes");
+                    }
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                }
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(temp.getPath(), bounds);
+            if( bounds.outWidth <= 0 || bounds.outHeight <= 0 ) {
+                throw new IOException("Photo of pet " + id + " is not an image");
+            }
+
+            String hash = toHex(digest.digest());
+            if( !temp.renameTo(getPhotoFile(id, hash)) ) {
+                throw new IOException("Could not store the photo of pet " + id);
+            }
+            return hash;
+        } finally {
+            // only still there if the photo was not stored
+            temp.delete();
+        }
+    }
+
+    /**
+     * Delete the photo of the pet with the given hash, and its thumbnail.
+     */
+    void deletePhoto(long id, String hash) {
+        getPhotoFile(id, hash).delete();
+        File thumbnail = getThumbnailFile(id, hash);
+        long length = thumbnail.length();
+        if( thumbnail.delete() ) {
+            addThumbnailBytes(-length);
+        }
+    }
+
+    /**
+     * Delete the photos of the pets, given as the photo hash by pet id.
+     */
+    void deletePhotos(LongSparseArray<String> photos) {
+        for( int i = 0; i < photos.size(); i++ ) {
+            deletePhoto(photos.keyAt(i), photos.valueAt(i));
+        }
+    }
+
+    /**
+     * Returns the thumbnail of the photo of the pet with the given hash, generating it if
+     * it is not on disk yet.
+     * @throws FileNotFoundException if the photo is missing or cannot be decoded
+     */
+    File getThumbnail(long id, String hash) throws FileNotFoundException {
+        File thumbnail = getThumbnailFile(id, hash);
+        if( thumbnail.exists() ) {
+            // the modification time orders the thumbnails by last use
+            thumbnail.setLastModified(System.currentTimeMillis());
+            return thumbnail;
+        }
+
+        File photo = getPhotoFile(id, hash);
+        Bitmap bitmap = decodeScaled(photo, PetEntry.THUMBNAIL_SIZE);
+        if( bitmap == null ) {
+            throw new FileNotFoundException("No photo to make a thumbnail of " + photo);
+        }
+        try {
+            makeDirectory(mThumbnailDir);
+            File temp = File.createTempFile(id + "-", TEMP_SUFFIX, mThumbnailDir);
+            try {
+                FileOutputStream out = new FileOutputStream(temp);
+                try {
+                    bitmap.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, out);
+                } finally {
+                    out.close();
+                }
+                if( !temp.renameTo(thumbnail) ) {
+                    throw new FileNotFoundException("Could not store thumbnail " + thumbnail);
+                }
+            } finally {
+                temp.delete();
+            }
+        } catch (IOException e) {
+            throw new FileNotFoundException("Could not write thumbnail " + thumbnail + ": "
+                    + e.getMessage());
+        } finally {
+            bitmap.recycle();
+        }
+        addThumbnailBytes(thumbnail.length());
+        return thumbnail;
+    }
+
+    /**
+     * Decode the image scaled so its longer side is at most the given size. Returns null if
+     * it cannot be decoded.
+     */
+    private static Bitmap decodeScaled(File file, int size) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        int longest = Math.max(options.outWidth, options.outHeight);
+        if( longest <= 0 ) {
+            return null;
+        }
+        // subsampling by a power of two is cheap, it keeps at least the wanted size
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = 1;
+        while( longest / (options.inSampleSize * 2) >= size ) {
+            options.inSampleSize *= 2;
+        }
+        Bitmap sampled = BitmapFactory.decodeFile(file.getPath(), options);
+        if( sampled == null ) {
+            return null;
+        }
+        int sampledLongest = Math.max(sampled.getWidth(), sampled.getHeight());
+        if( sampledLongest <= size ) {
+            return sampled;
+        }
+        float scale = (float) size / sampledLongest;
+        Bitmap scaled = Bitmap.createScaledBitmap(sampled,
+                Math.max(1, Math.round(sampled.getWidth() * scale)),
+                Math.max(1, Math.round(sampled.getHeight() * scale)), true);
+        if( scaled != sampled ) {
+            sampled.recycle();
+        }
+        return scaled;
+    }
+
+    private synchronized void addThumbnailBytes(long bytes) {
+        if( mThumbnailBytes < 0 ) {
+            mThumbnailBytes = countBytes(listFiles(mThumbnailDir));
+        } else {
+            mThumbnailBytes += bytes;
+        }
+        if( mThumbnailBytes > MAX_THUMBNAIL_BYTES ) {
+            trimThumbnails();
+        }
+    }
+
+    /**
+     * Delete the least recently used thumbnails down to three quarters of the limit, so
+     * the directory is not listed again for every new thumbnail. The running count may have
+     * drifted from concurrent writes of one thumbnail, it is recounted from the files.
+     */
+    private void trimThumbnails() {
+        File[] files = listFiles(mThumbnailDir);
+        final long[] modified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for( int i = 0; i < files.length; i++ ) {
+            modified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return modified[a] < modified[b] ? -1 : modified[a] == modified[b] ? 0 : 1;
+            }
+        });
+        long bytes = countBytes(files);
+        int deleted = 0;
+        for( int i = 0; i < order.length && bytes > MAX_THUMBNAIL_BYTES / 4 * 3; i++ ) {
+            File file = files[order[i]];
+            long length = file.length();
+            if( file.delete() ) {
+                bytes -= length;
+                deleted++;
+            }
+        }
+        mThumbnailBytes = bytes;
+        Log.i(LOG_TAG, "Trimmed " + deleted + " thumbnails, " + bytes + " bytes left");
+    }
+
+    /**
+     * Delete the photos and thumbnails no pet refers to any more, e.g. left by a process
+     * that died between storing a photo and deleting the one it replaced. Returns the number
+     * of files deleted. Call it on a background thread.
+     */
+    int deleteOrphans(SQLiteDatabase db) {
+        Map<Long, String> hashes = new HashMap<>();
+        Cursor cursor = db.rawQuery(SQL_PHOTOS, null);
+        try {
+            while( cursor.moveToNext() ) {
+                hashes.put(cursor.getLong(0), cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        long before = System.currentTimeMillis() - SWEEP_MIN_AGE_MILLIS;
+        int deleted = deleteOrphans(mPhotoDir, "", hashes, before);
+        int deletedThumbnails = deleteOrphans(mThumbnailDir, THUMBNAIL_SUFFIX, hashes, before);
+        if( deletedThumbnails > 0 ) {
+            synchronized (this) {
+                mThumbnailBytes = -1;
+            }
+        }
+        return deleted + deletedThumbnails;
+    }
+
+    private static int deleteOrphans(File directory, String suffix, Map<Long, String> hashes,
+                                     long before) {
+        int deleted = 0;
+        for( File file : listFiles(directory) ) {
+            if( file.lastModified() >= before ) {
+                continue;
+            }
+            String name = file.getName();
+            int dash = name.indexOf('-');
+            boolean used = false;
+            if( dash > 0 && name.endsWith(suffix) ) {
+                try {
+                    String hash = hashes.get(Long.parseLong(name.substring(0, dash)));
+                    used = name.substring(dash + 1, name.length() - suffix.length()).equals(hash);
+                } catch (NumberFormatException e) {
+                    // not a file of ours
+                }
+            }
+            if( !used && file.delete() ) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    private static File[] listFiles(File directory) {
+        File[] files = directory.listFiles();
+        return files == null ? new File[0] : files;
+    }
+
+    private static long countBytes(File[] files) {
+        long bytes = 0;
+        for( File file : files ) {
+            bytes += file.length();
+        }
+        return bytes;
+    }
+
+    private static void makeDirectory(File directory) throws IOException {
+        if( !directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory() ) {
+            throw new IOException("Could not create " + directory);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] digits = "0123456789abcdef".toCharArray();
+        char[] hex = new char[bytes.length * 2];
+        for( int i = 0; i < bytes.length; i++ ) {
+            hex[2 * i] = digits[(bytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = digits[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+}
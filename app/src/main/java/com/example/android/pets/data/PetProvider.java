@@ -1,18 +1,51 @@
 package com.example.android.pets.data;
 
+import android.content.ClipDescription;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Intent;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
+import android.content.res.AssetFileDescriptor;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
+import android.database.MergeCursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.v4.util.LongSparseArray;
+import android.text.TextUtils;
 import android.util.Log;
 
+import com.example.android.pets.data.PetContract.PetBreedEntry;
+import com.example.android.pets.data.PetContract.PetCallEntry;
+import com.example.android.pets.data.PetContract.PetChangeEntry;
 import com.example.android.pets.data.PetContract.PetEntry;
+import com.example.android.pets.data.PetContract.PetMetricsEntry;
+import com.example.android.pets.data.PetContract.PetStatsEntry;
+
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 import static android.R.attr.id;
 import static android.R.attr.value;
@@ -28,19 +61,202 @@ public class PetProvider extends ContentProvider {
     /** Database helper object */
     private PetDbHelper mDbHealper;
 
+    /** Single pets recently looked up through their row URI */
+    private final PetCache mCache = new PetCache(PET_CACHE_SIZE);
+
+    /** Compiled insert shared with the in-process callers of {@link PetWriter} */
+    private PetWriter mWriter;
+
+    /** Compiled single-pet update statements, created with the writable database */
+    private PetStatementPool mStatements;
+
+    /** Breed ids by name, so writes rarely have to look a breed up in the database */
+    private PetBreeds mBreeds;
+
+    /** Photo files and thumbnails of the pets */
+    private PetPhotoStore mPhotos;
+
+    /** Latency and row counters of the provider calls */
+    private final PetMetrics mMetrics = new PetMetrics(METRICS_MATCH_NAMES);
+
+    /** URIs changed by the batch running on the current thread, null outside a batch */
+    private final ThreadLocal<Set<Uri>> mPendingNotifications = new ThreadLocal<>();
+
+    /** Photos of the pets deleted by the batch running on the current thread, by pet id */
+    private final ThreadLocal<LongSparseArray<String>> mPendingPhotoDeletes = new ThreadLocal<>();
+
     private static final int PETS = 100;
     private static final int PETS_ID =  101;
+    private static final int PETS_SEARCH = 102;
+    private static final int PETS_STATS = 103;
+    private static final int PETS_METRICS = 104;
+    private static final int PETS_EXPORT = 105;
+    private static final int PETS_IMPORT = 106;
+    private static final int PETS_CHANGES = 107;
+    private static final int PETS_PHOTO = 108;
+    private static final int PETS_THUMBNAIL = 109;
+    private static final int PETS_FILTER = 110;
+
+    /** Not a URI match: the methods of {@link #call}, recorded by {@link #mMetrics} as one */
+    private static final int PETS_CALL = 111;
+
+    /** Names of the URI matches recorded by {@link #mMetrics}, indexed by match - PETS */
+    private static final String[] METRICS_MATCH_NAMES = { "pets", "pets/#", "pets/search/*",
+            "pets/stats", "pets/metrics", "pets/export", "pets/import", "pets/changes",
+            "pets/#/photo", "pets/#/thumbnail", "pets/filter", "call" };
 
     private static final UriMatcher sUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
 
     static {
         sUriMatcher.addURI(PetContract.CONTENT_AUTHORITY, PetContract.PATH_PETS, PETS);
         sUriMatcher.addURI(PetContract.CONTENT_AUTHORITY, PetContract.PATH_PETS + "/#", PETS_ID);
+        sUriMatcher.addURI(PetContract.CONTENT_AUTHORITY,
+                PetContract.PATH_PETS + "/" + PetContract.PATH_SEARCH + "/*", PETS_SEARCH);
+        sUriMatcher.addURI(PetContract.CONTENT_AUTHORITY,
+                PetContract.PATH_PETS + "/" + PetContract.PATH_STATS, PETS_STATS);
+        sUriMatcher.addURI(PetContract.CONTENT_AUTHORITY,
+                PetContract.PATH_PETS + "/" + PetContract.PATH_METRICS, PETS_METRICS);
+        sUriMatcher.addURI(PetContract.CONTENT_AUTHORITY,
+                PetContract.PATH_PETS + "/" + PetContract.PATH_EXPORT, PETS_EXPORT);
+        sUriMatcher.addURI(PetContract.CONTENT_AUTHORITY,
+                PetContract.PATH_PETS + "/" + PetContract.PATH_IMPORT, PETS_IMPORT);
+        sUriMatcher.addURI(PetContract.CONTENT_AUTHORITY,
+                PetContract.PATH_PETS + "/" + PetContract.PATH_CHANGES, PETS_CHANGES);
+        sUriMatcher.addURI(PetContract.CONTENT_AUTHORITY,
+                PetContract.PATH_PETS + "/#/" + PetContract.PATH_PHOTO, PETS_PHOTO);
+        sUriMatcher.addURI(PetContract.CONTENT_AUTHORITY,
+                PetContract.PATH_PETS + "/#/" + PetContract.PATH_THUMBNAIL, PETS_THUMBNAIL);
+        sUriMatcher.addURI(PetContract.CONTENT_AUTHORITY,
+                PetContract.PATH_PETS + "/" + PetContract.PATH_FILTER, PETS_FILTER);
 
     }
     /** Tag for the log message */
     public static final String LOG_TAG = PetProvider.class.getSimpleName();
 
+    /** Maps the pet columns of a search to the pets view, the FTS table has the same names */
+    private static final HashMap<String, String> sSearchProjectionMap = new HashMap<>();
+
+    static {
+        for( String column : new String[] { PetEntry._ID, PetEntry.COLUMN_PET_NAME,
+                PetEntry.COLUMN_PET_BREED, PetEntry.COLUMN_PET_GENDER,
+                PetEntry.COLUMN_PET_WEIGHT, PetEntry.COLUMN_PET_PHOTO } ) {
+            sSearchProjectionMap.put(column, PetEntry.VIEW_NAME + "." + column + " AS " + column);
+        }
+    }
+
+    /** All the columns of a pet, read into a {@link Pet} by {@link PetCursorMapper} */
+    private static final String[] PET_COLUMNS = PetEntry.PROJECTION_ALL.clone();
+
+    /** Selection of a single pet by its id */
+    private static final String SELECTION_ID = PetEntry._ID + "=?";
+
+    /** Selection of the pets that have a photo */
+    private static final String SELECTION_HAS_PHOTO = PetEntry.COLUMN_PET_PHOTO + " IS NOT NULL";
+
+    /** The selections {@link PetCallEntry#METHOD_COUNT_WHERE} accepts, each with one argument */
+    private static final String[] COUNT_SELECTIONS = { PetEntry.SELECTION_WEIGHT_EQUALS,
+            PetEntry.SELECTION_GENDER_EQUALS, PetEntry.SELECTION_BREED_EQUALS };
+
+    /** Maximum number of pets kept in {@link #mCache} */
+    private static final int PET_CACHE_SIZE = 256;
+
+    /** Columns of the statistics cursor, in the order of {@link #SQL_STATS} */
+    private static final String[] STATS_COLUMNS = { PetStatsEntry.COLUMN_GROUP,
+            PetStatsEntry.COLUMN_KEY, PetStatsEntry.COLUMN_COUNT, PetStatsEntry.COLUMN_MIN_WEIGHT,
+            PetStatsEntry.COLUMN_AVG_WEIGHT, PetStatsEntry.COLUMN_MAX_WEIGHT };
+
+    /** Aggregates of the whole table and per gender, the start of {@link #SQL_STATS} */
+    private static final String SQL_STATS_TOTAL_GENDER =
+            statsSelect(PetStatsEntry.GROUP_TOTAL, "NULL", PetEntry.TABLE_NAME) + " UNION ALL "
+            + statsSelect(PetStatsEntry.GROUP_GENDER, PetEntry.COLUMN_PET_GENDER,
+                    PetEntry.TABLE_NAME)
+            + " GROUP BY " + PetEntry.COLUMN_PET_GENDER + " UNION ALL ";
+
+    /**
+     * Aggregates of the whole table, per gender and per breed, in one statement. The pets
+     * are grouped by their breed id, from the breed index alone, and only then is the name
+     * of each breed looked up.
+     */
+    private static final String SQL_STATS = SQL_STATS_TOTAL_GENDER
+            + "SELECT '" + PetStatsEntry.GROUP_BREED + "', b."
+            + PetBreedEntry.COLUMN_BREED_NAME + ", s.count, s.min, s.avg, s.max FROM ("
+            + "SELECT " + PetEntry.COLUMN_PET_BREED_ID + ", COUNT(*) AS count, MIN("
+            + PetEntry.COLUMN_PET_WEIGHT + ") AS min, AVG(" + PetEntry.COLUMN_PET_WEIGHT
+            + ") AS avg, MAX(" + PetEntry.COLUMN_PET_WEIGHT + ") AS max FROM "
+            + PetEntry.TABLE_NAME + " GROUP BY " + PetEntry.COLUMN_PET_BREED_ID + ") s LEFT JOIN "
+            + PetBreedEntry.TABLE_NAME + " b ON b." + PetBreedEntry._ID + " = s."
+            + PetEntry.COLUMN_PET_BREED_ID;
+
+    /** {@link #SQL_STATS} while some pets may still have their old breed text */
+    private static final String SQL_STATS_MIGRATING = SQL_STATS_TOTAL_GENDER
+            + statsSelect(PetStatsEntry.GROUP_BREED, PetEntry.COLUMN_PET_BREED,
+                    PetEntry.VIEW_NAME)
+            + " GROUP BY " + PetEntry.COLUMN_PET_BREED;
+
+    /**
+     * Pets whose breed is null as a table of the view's columns, in id order through the
+     * breed index. Pages by breed start with it, see {@link #queryPageByBreed}.
+     */
+    private static final String PAGE_NO_BREED_TABLE = "(SELECT " + PetEntry._ID + ", "
+            + PetEntry.COLUMN_PET_NAME + ", NULL AS " + PetEntry.COLUMN_PET_BREED + ", "
+            + PetEntry.COLUMN_PET_GENDER + ", " + PetEntry.COLUMN_PET_WEIGHT + ", "
+            + PetEntry.COLUMN_PET_PHOTO + " FROM " + PetEntry.TABLE_NAME + " WHERE "
+            + PetEntry.COLUMN_PET_BREED_ID + " IS NULL)";
+
+    /**
+     * Pets with a breed as a table of the view's columns. Walking the breeds in name order
+     * and the pets of each breed through the breed index yields them ordered by breed and
+     * id, without sorting the table.
+     */
+    private static final String PAGE_BREED_TABLE = "(SELECT p." + PetEntry._ID + " AS "
+            + PetEntry._ID + ", p." + PetEntry.COLUMN_PET_NAME + " AS " + PetEntry.COLUMN_PET_NAME
+            + ", b." + PetBreedEntry.COLUMN_BREED_NAME + " AS " + PetEntry.COLUMN_PET_BREED
+            + ", p." + PetEntry.COLUMN_PET_GENDER + " AS " + PetEntry.COLUMN_PET_GENDER
+            + ", p." + PetEntry.COLUMN_PET_WEIGHT + " AS " + PetEntry.COLUMN_PET_WEIGHT
+            + ", p." + PetEntry.COLUMN_PET_PHOTO + " AS " + PetEntry.COLUMN_PET_PHOTO
+            + " FROM " + PetBreedEntry.TABLE_NAME + " b CROSS JOIN " + PetEntry.TABLE_NAME
+            + " p ON p." + PetEntry.COLUMN_PET_BREED_ID + " = b." + PetBreedEntry._ID + ")";
+
+    /** MIME types the export can be streamed as, the first one is the default */
+    private static final String[] EXPORT_MIME_TYPES = { PetEntry.MIME_TYPE_CSV,
+            PetEntry.MIME_TYPE_BINARY };
+
+    /** Number of pets read from an import stream before they are bulk inserted */
+    private static final int IMPORT_CHUNK_SIZE = 500;
+
+    /** Breed id of a pet of a bulk insert that failed validation */
+    private static final long REJECTED = -1;
+
+    /** Lowest id of the pets with a name, a single seek into the name index */
+    private static final String SQL_FIRST_ID_BY_NAME = "SELECT IFNULL(MIN(" + PetEntry._ID
+            + "), -1) FROM " + PetEntry.TABLE_NAME + " WHERE " + PetEntry.COLUMN_PET_NAME + "=?";
+
+    /** Number of rows removed per transaction when deleting a selection of pets */
+    private static final int DELETE_CHUNK_SIZE = 1000;
+
+    /**
+     * Set once the pending migrations are done, from then on every pet refers to its breed
+     * by id and the queries can skip the view of the pets
+     */
+    private volatile boolean mMigrated;
+
+    /** Last computed statistics, reused as long as no write happened since */
+    private volatile StatsSnapshot mStats;
+
+    /**
+     * Rows of the statistics along with the {@link PetCache} generation they were computed at.
+     * Every committed write bumps that generation, so a snapshot with an older one is stale.
+     */
+    private static final class StatsSnapshot {
+        final long generation;
+        final ArrayList<Object[]> rows;
+
+        StatsSnapshot(long generation, ArrayList<Object[]> rows) {
+            this.generation = generation;
+            this.rows = rows;
+        }
+    }
+
     /**
      * Initialize the provider and the database helper object.
      */
@@ -48,10 +264,113 @@ public class PetProvider extends ContentProvider {
     public boolean onCreate (){
         // Make sure the variable is a global variable, so it
         // ContentProvider methods.
-        mDbHealper = new PetDbHelper(getContext());
+        mDbHealper = PetDbHelper.getInstance(getContext());
+        mWriter = PetWriter.getInstance(getContext());
+        mBreeds = PetBreeds.getInstance(getContext());
+        mPhotos = new PetPhotoStore(getContext());
+        // Pets inserted directly through the writer still reach the cache and the observers
+        mWriter.setInsertListener(new PetWriter.InsertListener() {
+            @Override
+            public void onPetInserted(Uri petUri) {
+                notifyChange(petUri);
+            }
+        });
+        startBackgroundStartup();
         return true;
     }
 
+    /**
+     * Open the database, prefetch the first page of the catalog, finish the migration of
+     * the pets after an upgrade, compact the journal of changes and delete orphaned photo
+     * files, on a background thread.
+     * The provider is created before anything else of the app, so the catalog screen finds
+     * the database open and its first pets in memory, and the first launch after an update
+     * does not wait for the migrations.
+     * A failing step is logged and skipped rather than taking the process down, which would
+     * repeat on every launch. The provider keeps working without it, e.g. through the view
+     * of the pets while the migrations are unfinished.
+     */
+    private void startBackgroundStartup() {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    prefetchCatalog();
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Prefetching the catalog failed", e);
+                }
+                try {
+                    mDbHealper.runPendingMigrations(new PetMigrations.ProgressListener() {
+                        @Override
+                        public void onMigrationProgress(int version, long done, long total) {
+                            Log.i(LOG_TAG, "Migrating pets to version " + version + ": "
+                                    + done + "/" + total);
+                            if( done == total ) {
+                                // e.g. the search index is complete now
+                                getContext().getContentResolver().notifyChange(
+                                        PetEntry.CONTENT_URI, null);
+                            }
+                        }
+                    });
+                    mMigrated = !mDbHealper.hasPendingMigrations();
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Migrating the pets failed, the next launch resumes", e);
+                }
+                try {
+                    int compacted = compactChanges(mDbHealper.getWritableDatabase());
+                    Log.i(LOG_TAG, "Compacted " + compacted + " pet changes");
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Compacting the pet changes failed", e);
+                }
+                try {
+                    int orphans = mPhotos.deleteOrphans(mDbHealper.getReadableDatabase());
+                    Log.i(LOG_TAG, "Deleted " + orphans + " orphaned photo files");
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Deleting the orphaned photo files failed", e);
+                }
+            }
+        }, "PetStartup").start();
+    }
+
+    /**
+     * Query the first page of the catalog, which also opens the database and creates or
+     * upgrades its schema, and hand an in-memory copy of it to {@link PetCatalogPrefetch}.
+     */
+    private void prefetchCatalog() {
+        long start = SystemClock.elapsedRealtime();
+        long generation = PetCatalogPrefetch.getGeneration();
+        Cursor cursor = query(PetEntry.buildPageUri(PetCatalogPrefetch.PAGE_SIZE),
+                PetEntry.PROJECTION_LIST, null, null, null);
+        if( cursor == null ) {
+            return;
+        }
+        MatrixCursor page;
+        try {
+            page = new MatrixCursor(cursor.getColumnNames(), cursor.getCount());
+            Object[] row = new Object[cursor.getColumnCount()];
+            while( cursor.moveToNext() ) {
+                for( int i = 0; i < row.length; i++ ) {
+                    switch( cursor.getType(i) ) {
+                        case Cursor.FIELD_TYPE_INTEGER:
+                            row[i] = cursor.getLong(i);
+                            break;
+                        case Cursor.FIELD_TYPE_NULL:
+                            row[i] = null;
+                            break;
+                        default:
+                            row[i] = cursor.getString(i);
+                    }
+                }
+                page.addRow(row);
+            }
+        } finally {
+            cursor.close();
+        }
+        PetCatalogPrefetch.offer(page, generation);
+        Log.i(LOG_TAG, "Prefetched " + page.getCount() + " pets in "
+                + (SystemClock.elapsedRealtime() - start) + "ms");
+    }
+
     /**
      * Perform the query for the given URI. Use the given project
      */
@@ -59,35 +378,731 @@ public class PetProvider extends ContentProvider {
     public Cursor query(@NonNull Uri uri, String[] projection,
                         String selection,
                         String[] selectionArgs, String sortOrder) {
+        int match = sUriMatcher.match(uri);
+        if( match == PETS_METRICS ) {
+            return mMetrics.toCursor();
+        }
+        long start = mMetrics.start();
         SQLiteDatabase database = mDbHealper.getReadableDatabase();
 
         Cursor cursor;
-        int match = sUriMatcher.match(uri);
         switch(match) {
             case PETS:
-                cursor = database.query(PetEntry.TABLE_NAME, projection, selection,
+                if( uri.getQueryParameter(PetEntry.QUERY_PARAMETER_LIMIT) != null ) {
+                    cursor = queryPage(database, uri, projection, selection, selectionArgs,
+                            sortOrder);
+                    break;
+                }
+                cursor = database.query(PetEntry.VIEW_NAME, projection, selection,
                         selectionArgs,null, null,
                         sortOrder);
                 break;
             case PETS_ID:
-                selection = PetEntry._ID + "=?";
+                if( isPetProjection(projection) ) {
+                    cursor = queryPet(database, ContentUris.parseId(uri), projection);
+                    break;
+                }
                 selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
-                cursor = database.query(PetEntry.TABLE_NAME, projection, selection, selectionArgs,
+                cursor = database.query(PetEntry.VIEW_NAME, projection, SELECTION_ID, selectionArgs,
                         null, null, sortOrder);
                 break;
+            case PETS_SEARCH:
+                cursor = querySearch(database, uri, projection, selection, selectionArgs);
+                break;
+            case PETS_STATS:
+                cursor = queryStats(database);
+                break;
+            case PETS_CHANGES:
+                cursor = queryChanges(database, uri);
+                break;
+            case PETS_FILTER:
+                cursor = queryFilter(uri, selection, sortOrder);
+                break;
             default:
                 throw new IllegalArgumentException("Cannot query unknown " + uri ) ;
 
         }
+        // Watch the URI the cursor was created for, so a loader holding it reloads only
+        // when the pets behind it actually change. Search results, statistics, changes and
+        // filters depend on every pet, so they watch the whole collection.
+        Uri notificationUri = match == PETS_SEARCH || match == PETS_STATS
+                || match == PETS_CHANGES || match == PETS_FILTER ? PetEntry.CONTENT_URI : uri;
+        cursor.setNotificationUri(getContext().getContentResolver(), notificationUri);
+        if( start != 0 ) {
+            // getCount fills the first cursor window, which the caller would do anyway
+            mMetrics.record(PetMetrics.OP_QUERY, match - PETS, start, cursor.getCount(), uri);
+        }
+        return cursor;
+    }
+
+    /**
+     * Returns true when the projection only asks for plain pet columns, which a cached
+     * {@link Pet} can answer. A null projection asks for all of them.
+     */
+    private static boolean isPetProjection(String[] projection) {
+        if( projection == null ) {
+            return true;
+        }
+        for( String column : projection ) {
+            if( !Arrays.asList(PET_COLUMNS).contains(column) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Look up a single pet, from {@link #mCache} when it is there, otherwise from the database
+     * and then cached.
+     */
+    private Cursor queryPet(SQLiteDatabase database, long id, String[] projection) {
+        if( projection == null ) {
+            projection = PET_COLUMNS;
+        }
+        Pet pet = mCache.get(id);
+        if( pet == null ) {
+            long generation = mCache.getGeneration();
+            Cursor row = database.query(PetEntry.VIEW_NAME, PET_COLUMNS, SELECTION_ID,
+                    new String[] { String.valueOf(id) }, null, null, null);
+            try {
+                if( !row.moveToFirst() ) {
+                    return new MatrixCursor(projection, 0);
+                }
+                pet = new PetCursorMapper(row).read();
+            } finally {
+                row.close();
+            }
+            mCache.put(pet, generation);
+        }
+
+        MatrixCursor cursor = new MatrixCursor(projection, 1);
+        MatrixCursor.RowBuilder builder = cursor.newRow();
+        for( String column : projection ) {
+            builder.add(pet.getColumnValue(column));
+        }
         return cursor;
     }
 
+    /**
+     * Query a page of the journal of changes, see {@link PetChangeEntry}. It is read by
+     * sequence number, so the cost depends on the size of the page, not on the number of pets.
+     */
+    private Cursor queryChanges(SQLiteDatabase database, Uri uri) {
+        long since;
+        int limit = PetChangeEntry.DEFAULT_PAGE_SIZE;
+        try {
+            String sinceParameter = uri.getQueryParameter(PetChangeEntry.QUERY_PARAMETER_SINCE);
+            since = sinceParameter == null ? 0 : Long.parseLong(sinceParameter);
+            String limitParameter = uri.getQueryParameter(PetChangeEntry.QUERY_PARAMETER_LIMIT);
+            if( limitParameter != null ) {
+                limit = Integer.parseInt(limitParameter);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid changes query " + uri);
+        }
+        if( limit <= 0 || limit > PetChangeEntry.MAX_PAGE_SIZE ) {
+            throw new IllegalArgumentException("Changes limit must be between 1 and "
+                    + PetChangeEntry.MAX_PAGE_SIZE + " " + uri);
+        }
+        return database.rawQuery(PetSql.SQL_CHANGES,
+                new String[] { String.valueOf(since), String.valueOf(limit) });
+    }
+
+    /**
+     * Filter the pets through the {@link PetSnapshot}, see {@link PetEntry#CONTENT_FILTER_URI}.
+     */
+    private Cursor queryFilter(Uri uri, String selection, String sortOrder) {
+        if( selection != null ) {
+            throw new IllegalArgumentException("Filter takes no selection " + uri);
+        }
+        int gender = PetSnapshot.GENDER_ANY;
+        int minWeight = Integer.MIN_VALUE;
+        int maxWeight = Integer.MAX_VALUE;
+        try {
+            String parameter = uri.getQueryParameter(PetEntry.QUERY_PARAMETER_GENDER);
+            if( parameter != null ) {
+                gender = Integer.parseInt(parameter);
+            }
+            parameter = uri.getQueryParameter(PetEntry.QUERY_PARAMETER_MIN_WEIGHT);
+            if( parameter != null ) {
+                minWeight = Integer.parseInt(parameter);
+            }
+            parameter = uri.getQueryParameter(PetEntry.QUERY_PARAMETER_MAX_WEIGHT);
+            if( parameter != null ) {
+                maxWeight = Integer.parseInt(parameter);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid filter query " + uri);
+        }
+        if( gender != PetSnapshot.GENDER_ANY && !PetEntry.isValidGender(gender) ) {
+            throw new IllegalArgumentException("Invalid filter gender " + uri);
+        }
+
+        String[] terms = sortOrder == null ? new String[] { PetEntry._ID }
+                : sortOrder.trim().split("\\s+");
+        boolean descending = terms.length == 2 && "DESC".equalsIgnoreCase(terms[1]);
+        if( terms.length > 2 || terms.length == 2 && !descending
+                && !"ASC".equalsIgnoreCase(terms[1]) ) {
+            throw new IllegalArgumentException("Cannot filter pets by " + sortOrder);
+        }
+        int order;
+        switch( terms[0] ) {
+            case PetEntry._ID:
+                order = PetSnapshot.SORT_ID;
+                break;
+            case PetEntry.COLUMN_PET_NAME:
+                order = PetSnapshot.SORT_NAME;
+                break;
+            case PetEntry.COLUMN_PET_BREED:
+                order = PetSnapshot.SORT_BREED;
+                break;
+            case PetEntry.COLUMN_PET_WEIGHT:
+                order = PetSnapshot.SORT_WEIGHT;
+                break;
+            default:
+                throw new IllegalArgumentException("Cannot filter pets by " + sortOrder);
+        }
+        return PetSnapshot.getInstance(getContext()).query(gender, minWeight, maxWeight, order,
+                descending);
+    }
+
+    /**
+     * Compact the journal of changes down to the latest change of every pet, and drop the
+     * deletes older than {@link PetChangeEntry#DELETE_RETENTION_SECONDS}. The journal is
+     * walked in sequence order, {@link PetSql#COMPACT_CHUNK_SIZE} changes per transaction, so
+     * writers wait for one chunk at most. Returns the number of changes removed.
+     */
+    private static int compactChanges(SQLiteDatabase db) {
+        String expiry = String.valueOf(System.currentTimeMillis() / 1000
+                - PetChangeEntry.DELETE_RETENTION_SECONDS);
+        SQLiteStatement expire = db.compileStatement(PetSql.SQL_EXPIRE_DELETES);
+        SQLiteStatement compact = db.compileStatement(PetSql.SQL_COMPACT_CHANGES);
+        int removed = 0;
+        try {
+            long after = 0;
+            while( true ) {
+                long end = DatabaseUtils.longForQuery(db, PetSql.SQL_COMPACT_CHUNK_END,
+                        new String[] { String.valueOf(after) });
+                if( end == 0 ) {
+                    return removed;
+                }
+                String[] chunkArgs = { String.valueOf(after), String.valueOf(end), expiry };
+                db.beginTransactionNonExclusive();
+                try {
+                    // the horizon moves in the transaction dropping the deletes, so a mirror
+                    // never reads the journal without them and without the reset
+                    expire.bindAllArgsAsStrings(chunkArgs);
+                    expire.execute();
+                    compact.bindAllArgsAsStrings(chunkArgs);
+                    removed += compact.executeUpdateDelete();
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                after = end;
+            }
+        } finally {
+            expire.close();
+            compact.close();
+        }
+    }
+
+    /**
+     * Returns the statistics of the pets, computed by {@link #SQL_STATS} and kept until the
+     * next write. The cursor has one row per group, so its size does not depend on the
+     * number of pets.
+     */
+    private Cursor queryStats(SQLiteDatabase database) {
+        StatsSnapshot stats = mStats;
+        if( stats == null || stats.generation != mCache.getGeneration() ) {
+            long generation = mCache.getGeneration();
+            ArrayList<Object[]> rows = new ArrayList<>();
+            Cursor result = database.rawQuery(mMigrated ? SQL_STATS : SQL_STATS_MIGRATING, null);
+            try {
+                while( result.moveToNext() ) {
+                    String group = result.getString(0);
+                    Object key;
+                    if( result.isNull(1) ) {
+                        key = null;
+                    } else if( PetStatsEntry.GROUP_GENDER.equals(group) ) {
+                        key = result.getInt(1);
+                    } else {
+                        key = result.getString(1);
+                    }
+                    rows.add(new Object[] { group, key, result.getInt(2),
+                            result.isNull(3) ? null : result.getInt(3),
+                            result.isNull(4) ? null : result.getDouble(4),
+                            result.isNull(5) ? null : result.getInt(5) });
+                }
+            } finally {
+                result.close();
+            }
+            stats = new StatsSnapshot(generation, rows);
+            mStats = stats;
+        }
+
+        MatrixCursor cursor = new MatrixCursor(STATS_COLUMNS, stats.rows.size());
+        for( Object[] row : stats.rows ) {
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    /**
+     * Build the SELECT of one group of {@link #SQL_STATS}.
+     */
+    private static String statsSelect(String group, String key, String tables) {
+        return "SELECT '" + group + "', " + key + ", COUNT(*), MIN(" + PetEntry.COLUMN_PET_WEIGHT
+                + "), AVG(" + PetEntry.COLUMN_PET_WEIGHT + "), MAX(" + PetEntry.COLUMN_PET_WEIGHT
+                + ") FROM " + tables;
+    }
+
+    /**
+     * Search pets through the full-text index. Every word of the search text is matched as a
+     * prefix against the words of the name and breed, so "gold ret" finds "Golden Retriever".
+     * Pets matching by name are ranked before pets matching only by breed.
+     */
+    private Cursor querySearch(SQLiteDatabase database, Uri uri, String[] projection,
+                               String selection, String[] selectionArgs) {
+        String match = PetSql.buildMatchExpression(uri.getLastPathSegment());
+        if( match == null ) {
+            // nothing searchable in the text, e.g. only punctuation
+            return new MatrixCursor(projection != null ? projection
+                    : sSearchProjectionMap.keySet().toArray(new String[sSearchProjectionMap.size()]));
+        }
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(PetSql.SEARCH_TABLES);
+        builder.setProjectionMap(sSearchProjectionMap);
+        builder.appendWhere(PetEntry.FTS_TABLE_NAME + " MATCH ");
+        builder.appendWhereEscapeString(match);
+        return builder.query(database, projection, selection, selectionArgs, null, null,
+                PetSql.SEARCH_ORDER, uri.getQueryParameter(PetEntry.QUERY_PARAMETER_LIMIT));
+    }
+
+    /**
+     * Query one page of pets using keyset pagination. Instead of an OFFSET, the page starts
+     * right after the (sort value, id) of the last row of the previous page, so SQLite seeks
+     * straight into the matching index and the cost of a page does not grow with the table.
+     */
+    private Cursor queryPage(SQLiteDatabase database, Uri uri, String[] projection,
+                             String selection, String[] selectionArgs, String sortOrder) {
+        String sortColumn = sortOrder == null ? PetEntry._ID : sortOrder.trim();
+        if( sortColumn.endsWith(" ASC") ) {
+            sortColumn = sortColumn.substring(0, sortColumn.length() - 4).trim();
+        }
+        if( !sortColumn.equals(PetEntry._ID) && !sortColumn.equals(PetEntry.COLUMN_PET_NAME)
+                && !sortColumn.equals(PetEntry.COLUMN_PET_BREED) ) {
+            throw new IllegalArgumentException("Cannot page pets by " + sortOrder);
+        }
+
+        String limit = uri.getQueryParameter(PetEntry.QUERY_PARAMETER_LIMIT);
+        try {
+            if( Integer.parseInt(limit) <= 0 ) {
+                throw new IllegalArgumentException("Page limit must be positive " + uri);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid page limit " + uri);
+        }
+
+        String after = uri.getQueryParameter(PetEntry.QUERY_PARAMETER_AFTER);
+        if( sortColumn.equals(PetEntry.COLUMN_PET_BREED) && mMigrated ) {
+            // validate the id before it goes into the arguments
+            String afterId = after == null ? null : String.valueOf(Long.parseLong(after));
+            String afterKey = after == null ? null
+                    : uri.getQueryParameter(PetEntry.QUERY_PARAMETER_AFTER_KEY);
+            return queryPageByBreed(database, projection, selection, selectionArgs, afterId,
+                    afterKey, Integer.parseInt(limit));
+        }
+        ArrayList<String> args = new ArrayList<>();
+        if( selectionArgs != null ) {
+            args.addAll(Arrays.asList(selectionArgs));
+        }
+        String keyset = null;
+        if( after != null ) {
+            // validate the id before it goes into the arguments
+            String afterId = String.valueOf(Long.parseLong(after));
+            String afterKey = uri.getQueryParameter(PetEntry.QUERY_PARAMETER_AFTER_KEY);
+            if( sortColumn.equals(PetEntry._ID) ) {
+                keyset = PetEntry._ID + " > ?";
+                args.add(afterId);
+            } else if( afterKey == null ) {
+                // null values sort first, so the previous page ended inside the null run
+                keyset = "(" + sortColumn + " IS NULL AND " + PetEntry._ID + " > ?) OR "
+                        + sortColumn + " IS NOT NULL";
+                args.add(afterId);
+            } else {
+                keyset = sortColumn + " > ? OR (" + sortColumn + " = ? AND "
+                        + PetEntry._ID + " > ?)";
+                args.add(afterKey);
+                args.add(afterKey);
+                args.add(afterId);
+            }
+        }
+
+        String where;
+        if( keyset == null ) {
+            where = selection;
+        } else if( selection == null || selection.isEmpty() ) {
+            where = keyset;
+        } else {
+            where = "(" + selection + ") AND (" + keyset + ")";
+        }
+        String orderBy = sortColumn.equals(PetEntry._ID) ? PetEntry._ID
+                : sortColumn + ", " + PetEntry._ID;
+        return database.query(PetEntry.VIEW_NAME, projection, where,
+                args.toArray(new String[args.size()]), null, null, orderBy, limit);
+    }
+
+    /**
+     * Query a page of pets by breed, the pets without a breed first. Those and the pets with
+     * a breed are each read in index order, see {@link #PAGE_NO_BREED_TABLE} and
+     * {@link #PAGE_BREED_TABLE}, and the page is the rows of the first followed by the rest
+     * from the second, so neither needs a sort.
+     * @param afterId  id of the last pet of the previous page, null for the first page
+     * @param afterKey breed of the last pet of the previous page, null if it had none
+     */
+    private static Cursor queryPageByBreed(SQLiteDatabase database, String[] projection,
+                                           String selection, String[] selectionArgs,
+                                           String afterId, String afterKey, int limit) {
+        ArrayList<Cursor> parts = new ArrayList<>(2);
+        int remaining = limit;
+        if( afterKey == null ) {
+            // the previous page, if any, ended inside the pets without a breed
+            Cursor noBreed = afterId == null
+                    ? queryPagePart(database, PAGE_NO_BREED_TABLE, projection, selection,
+                            selectionArgs, null, null, PetEntry._ID, remaining)
+                    : queryPagePart(database, PAGE_NO_BREED_TABLE, projection, selection,
+                            selectionArgs, PetEntry._ID + " > ?", new String[] { afterId },
+                            PetEntry._ID, remaining);
+            parts.add(noBreed);
+            remaining -= noBreed.getCount();
+        }
+        if( remaining > 0 ) {
+            String orderBy = PetEntry.COLUMN_PET_BREED + ", " + PetEntry._ID;
+            // The breeds compare like they sort, ignoring case. The range on the breed
+            // alone lets SQLite seek into the breed names.
+            parts.add(afterKey == null
+                    ? queryPagePart(database, PAGE_BREED_TABLE, projection, selection,
+                            selectionArgs, null, null, orderBy, remaining)
+                    : queryPagePart(database, PAGE_BREED_TABLE, projection, selection,
+                            selectionArgs, PetEntry.COLUMN_PET_BREED + " >= ? AND ("
+                                    + PetEntry.COLUMN_PET_BREED + " > ? OR " + PetEntry._ID
+                                    + " > ?)", new String[] { afterKey, afterKey, afterId },
+                            orderBy, remaining));
+        }
+        return parts.size() == 1 ? parts.get(0)
+                : new MergeCursor(parts.toArray(new Cursor[parts.size()]));
+    }
+
+    /**
+     * Query the rows of one part of a page by breed matching both the selection and the
+     * keyset condition, either of which may be null.
+     */
+    private static Cursor queryPagePart(SQLiteDatabase database, String table,
+                                        String[] projection, String selection,
+                                        String[] selectionArgs, String keyset,
+                                        String[] keysetArgs, String orderBy, int limit) {
+        return database.query(table, projection, DatabaseUtils.concatenateWhere(selection, keyset),
+                DatabaseUtils.appendSelectionArgs(selectionArgs, keysetArgs), null, null, orderBy,
+                String.valueOf(limit));
+    }
+
     /**
      * Returns the MIME type of data for the content URI.
      */
     @Override
     public String getType(@NonNull Uri uri) {
-        return null;
+        switch (sUriMatcher.match(uri)) {
+            case PETS_EXPORT:
+                return EXPORT_MIME_TYPES[0];
+            case PETS_THUMBNAIL:
+                return PetEntry.MIME_TYPE_THUMBNAIL;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns the MIME types the export URI can be streamed as.
+     */
+    @Override
+    public String[] getStreamTypes(@NonNull Uri uri, @NonNull String mimeTypeFilter) {
+        if( sUriMatcher.match(uri) != PETS_EXPORT ) {
+            return null;
+        }
+        ArrayList<String> types = new ArrayList<>();
+        for( String type : EXPORT_MIME_TYPES ) {
+            if( ClipDescription.compareMimeTypes(type, mimeTypeFilter) ) {
+                types.add(type);
+            }
+        }
+        return types.isEmpty() ? null : types.toArray(new String[types.size()]);
+    }
+
+    /**
+     * Open the export URI for reading, or the import URI for writing.
+     */
+    @Override
+    public ParcelFileDescriptor openFile(@NonNull Uri uri, @NonNull String mode)
+            throws FileNotFoundException {
+        switch (sUriMatcher.match(uri)) {
+            case PETS_EXPORT:
+                if( !"r".equals(mode) ) {
+                    throw new FileNotFoundException("Export can only be read " + uri);
+                }
+                boolean binary = PetEntry.FORMAT_BINARY.equals(
+                        uri.getQueryParameter(PetEntry.QUERY_PARAMETER_FORMAT));
+                return openPipeHelper(uri, binary ? PetEntry.MIME_TYPE_BINARY
+                        : PetEntry.MIME_TYPE_CSV, null, null, mExportWriter);
+            case PETS_IMPORT:
+                if( !mode.startsWith("w") ) {
+                    throw new FileNotFoundException("Import can only be written " + uri);
+                }
+                return openImport();
+            case PETS_PHOTO:
+                if( "r".equals(mode) ) {
+                    return openPhoto(parsePetId(uri));
+                }
+                if( "w".equals(mode) || "wt".equals(mode) || "rwt".equals(mode) ) {
+                    return openPhotoWriter(parsePetId(uri));
+                }
+                throw new FileNotFoundException("A photo can only be read or replaced " + uri);
+            case PETS_THUMBNAIL:
+                if( !"r".equals(mode) ) {
+                    throw new FileNotFoundException("Thumbnail can only be read " + uri);
+                }
+                return openThumbnail(parsePetId(uri),
+                        uri.getQueryParameter(PetEntry.QUERY_PARAMETER_PHOTO_HASH));
+            default:
+                throw new FileNotFoundException("No file for " + uri);
+        }
+    }
+
+    /** Returns the pet id of a pets/#/... URI */
+    private static long parsePetId(Uri uri) {
+        return Long.parseLong(uri.getPathSegments().get(1));
+    }
+
+    /**
+     * Returns the photo file of the pet itself, opened read-only: the reader streams it
+     * without any copy through the provider.
+     */
+    private ParcelFileDescriptor openPhoto(long id) throws FileNotFoundException {
+        String hash = queryPhotoHash(mDbHealper.getReadableDatabase(), id);
+        if( hash == null ) {
+            throw new FileNotFoundException("Pet " + id + " has no photo");
+        }
+        return ParcelFileDescriptor.open(mPhotos.getPhotoFile(id, hash),
+                ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    /**
+     * Returns the thumbnail file of the photo of the pet, generated on first use.
+     * @param wantedHash the photo the thumbnail is asked for, null for the current one
+     */
+    private ParcelFileDescriptor openThumbnail(long id, String wantedHash)
+            throws FileNotFoundException {
+        String hash = queryPhotoHash(mDbHealper.getReadableDatabase(), id);
+        if( hash == null ) {
+            throw new FileNotFoundException("Pet " + id + " has no photo");
+        }
+        if( wantedHash != null && !wantedHash.equals(hash) ) {
+            throw new FileNotFoundException("Photo of pet " + id + " changed");
+        }
+        return ParcelFileDescriptor.open(mPhotos.getThumbnail(id, hash),
+                ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    /**
+     * Returns the write end of a pipe whose content becomes the new photo of the pet once
+     * it is closed, see {@link #replacePhoto}.
+     */
+    private ParcelFileDescriptor openPhotoWriter(final long id) throws FileNotFoundException {
+        // fail early for a missing pet, rather than after the photo was written
+        queryPhotoHash(mDbHealper.getReadableDatabase(), id);
+        final ParcelFileDescriptor[] pipe;
+        try {
+            pipe = ParcelFileDescriptor.createPipe();
+        } catch (IOException e) {
+            throw new FileNotFoundException("Could not open photo pipe: " + e.getMessage());
+        }
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                replacePhoto(id, pipe[0]);
+            }
+        }, "PetPhoto").start();
+        return pipe[1];
+    }
+
+    /**
+     * Store the photo read from the pipe as a new file, point the pet at it and delete the
+     * photo it replaces. If the pet was deleted in the meantime the new file is deleted too.
+     */
+    private void replacePhoto(long id, ParcelFileDescriptor input) {
+        InputStream in = new ParcelFileDescriptor.AutoCloseInputStream(input);
+        String hash;
+        try {
+            hash = mPhotos.savePhoto(id, in);
+        } catch (IOException | RuntimeException e) {
+            Log.e(LOG_TAG, "Photo of pet " + id + " was not saved", e);
+            return;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Failed to close photo stream", e);
+            }
+        }
+
+        SQLiteDatabase db = mDbHealper.getWritableDatabase();
+        String oldHash;
+        db.beginTransactionNonExclusive();
+        try {
+            oldHash = queryPhotoHash(db, id);
+            ContentValues values = new ContentValues();
+            values.put(PetEntry.COLUMN_PET_PHOTO, hash);
+            db.update(PetEntry.TABLE_NAME, values, SELECTION_ID,
+                    new String[] { String.valueOf(id) });
+            db.setTransactionSuccessful();
+        } catch (FileNotFoundException e) {
+            Log.w(LOG_TAG, "Pet " + id + " was deleted while its photo was written");
+            mPhotos.deletePhoto(id, hash);
+            return;
+        } catch (RuntimeException e) {
+            // e.g. an SQLiteException; the pet keeps its photo. The new file may be that
+            // same photo, so it is left to the sweep of orphaned files.
+            Log.e(LOG_TAG, "Photo of pet " + id + " was not stored", e);
+            return;
+        } finally {
+            db.endTransaction();
+        }
+        if( oldHash != null && !oldHash.equals(hash) ) {
+            mPhotos.deletePhoto(id, oldHash);
+        }
+        notifyChange(ContentUris.withAppendedId(PetEntry.CONTENT_URI, id));
+    }
+
+    /**
+     * Returns the photo hash of the pet, null if it has no photo.
+     * @throws FileNotFoundException if there is no such pet
+     */
+    private static String queryPhotoHash(SQLiteDatabase db, long id) throws FileNotFoundException {
+        Cursor cursor = db.query(PetEntry.TABLE_NAME, new String[] { PetEntry.COLUMN_PET_PHOTO },
+                SELECTION_ID, new String[] { String.valueOf(id) }, null, null, null);
+        try {
+            if( !cursor.moveToFirst() ) {
+                throw new FileNotFoundException("No pet " + id);
+            }
+            return cursor.getString(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Open the export URI in the first export format matching the MIME type filter.
+     */
+    @Override
+    public AssetFileDescriptor openTypedAssetFile(@NonNull Uri uri, @NonNull String mimeTypeFilter,
+                                                  Bundle opts) throws FileNotFoundException {
+        if( sUriMatcher.match(uri) != PETS_EXPORT ) {
+            return super.openTypedAssetFile(uri, mimeTypeFilter, opts);
+        }
+        String[] types = getStreamTypes(uri, mimeTypeFilter);
+        if( types == null ) {
+            throw new FileNotFoundException("Cannot export pets as " + mimeTypeFilter);
+        }
+        return new AssetFileDescriptor(openPipeHelper(uri, types[0], opts, null, mExportWriter),
+                0, AssetFileDescriptor.UNKNOWN_LENGTH);
+    }
+
+    /**
+     * Streams every pet in id order from the database into the pipe, on the background thread
+     * started by {@link #openPipeHelper}.
+     */
+    private final PipeDataWriter<Void> mExportWriter = new PipeDataWriter<Void>() {
+        @Override
+        public void writeDataToPipe(@NonNull ParcelFileDescriptor output, @NonNull Uri uri,
+                                    @NonNull String mimeType, Bundle opts, Void args) {
+            Cursor cursor = mDbHealper.getReadableDatabase().query(PetEntry.VIEW_NAME,
+                    PetExportFormat.COLUMNS, null, null, null, null, PetEntry._ID);
+            // The pipe is closed by openPipeHelper once this returns
+            FileOutputStream out = new FileOutputStream(output.getFileDescriptor());
+            try {
+                if( PetEntry.MIME_TYPE_BINARY.equals(mimeType) ) {
+                    PetExportFormat.writeBinary(cursor, out);
+                } else {
+                    PetExportFormat.writeCsv(cursor, out);
+                }
+            } catch (IOException | RuntimeException e) {
+                // most likely the reader closed its end early, or the database failed;
+                // either way the reader sees the pipe end, the process keeps running
+                Log.w(LOG_TAG, "Export of pets stopped", e);
+            } finally {
+                cursor.close();
+            }
+        }
+    };
+
+    /**
+     * Returns the write end of a pipe whose content is imported on a background thread.
+     */
+    private ParcelFileDescriptor openImport() throws FileNotFoundException {
+        final ParcelFileDescriptor[] pipe;
+        try {
+            pipe = ParcelFileDescriptor.createPipe();
+        } catch (IOException e) {
+            throw new FileNotFoundException("Could not open import pipe: " + e.getMessage());
+        }
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                importPets(pipe[0]);
+            }
+        }, "PetImport").start();
+        return pipe[1];
+    }
+
+    /**
+     * Read pets from the stream and insert them {@link #IMPORT_CHUNK_SIZE} at a time with
+     * {@link #bulkInsert}, each chunk in its own transaction. Observers are notified once,
+     * at the end of the import.
+     */
+    private void importPets(ParcelFileDescriptor input) {
+        InputStream in = new ParcelFileDescriptor.AutoCloseInputStream(input);
+        int imported = 0;
+        mPendingNotifications.set(new LinkedHashSet<Uri>());
+        try {
+            PetExportFormat.PetReader reader = PetExportFormat.openReader(in);
+            ContentValues[] chunk = new ContentValues[IMPORT_CHUNK_SIZE];
+            int size = 0;
+            ContentValues pet;
+            while( (pet = reader.next()) != null ) {
+                chunk[size++] = pet;
+                if( size == chunk.length ) {
+                    imported += bulkInsert(PetEntry.CONTENT_URI, chunk);
+                    size = 0;
+                }
+            }
+            if( size > 0 ) {
+                imported += bulkInsert(PetEntry.CONTENT_URI, Arrays.copyOf(chunk, size));
+            }
+        } catch (IOException | RuntimeException e) {
+            // a malformed stream, an invalid pet or a database failure; the pets of the
+            // chunks before stay imported
+            Log.e(LOG_TAG, "Import of pets stopped after " + imported + " pets", e);
+        } finally {
+            Set<Uri> pending = mPendingNotifications.get();
+            mPendingNotifications.remove();
+            sendNotifications(pending);
+            try {
+                in.close();
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Failed to close import stream", e);
+            }
+        }
+        Log.i(LOG_TAG, "Imported " + imported + " pets");
     }
 
     /**
@@ -99,7 +1114,10 @@ public class PetProvider extends ContentProvider {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case PETS:
-                return insertPet(uri, contentValues);
+                long start = mMetrics.start();
+                Uri petUri = insertPet(uri, contentValues);
+                mMetrics.record(PetMetrics.OP_INSERT, match - PETS, start, petUri == null ? 0 : 1, uri);
+                return petUri;
             default:
                 throw new IllegalArgumentException("Insertion is not supported for " + uri);
         }
@@ -113,39 +1131,516 @@ public class PetProvider extends ContentProvider {
 
         SQLiteDatabase db = mDbHealper.getWritableDatabase();
 
-        // check that the name is not null
-        String name = values.getAsString(PetEntry.COLUMN_PET_NAME);
+        // check that the name, gender and weight are valid
+        String error = checkPetValues(values);
+        if( error != null ) {
+            throw new IllegalArgumentException(error);
+        }
+        long breedId = mBreeds.resolve(values.getAsString(PetEntry.COLUMN_PET_BREED));
+        long id;
+        db.beginTransactionNonExclusive();
+        try {
+            id = mWriter.insertRow(values.getAsString(PetEntry.COLUMN_PET_NAME), breedId,
+                    values.getAsInteger(PetEntry.COLUMN_PET_GENDER), getWeight(values));
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        // Once we know the ID of the new row in the table,
+        // return the new URI with the ID appended to the end of it
+        if( id == -1 ){
+            Log.e(LOG_TAG,"Failed to insert row for " + uri);
+            return null;
+        }
+        Uri petUri = ContentUris.withAppendedId(uri, id);
+        // Notifying the row also reaches observers of the whole pets collection
+        notifyChange(petUri);
+        return petUri;
+    }
+
+    /**
+     * Check the content values of a new pet. Returns null when the pet can be inserted,
+     * otherwise the reason it was rejected.
+     */
+    private static String checkPetValues(ContentValues values) {
         // checking if name is null or not
+        String name = values.getAsString(PetEntry.COLUMN_PET_NAME);
         if( name == null) {
-            throw new IllegalArgumentException("Pet requires a name");
+            return "Pet requires a name";
         }
 
         Integer gender = values.getAsInteger(PetEntry.COLUMN_PET_GENDER);
-
-        if( gender == null || !PetEntry.isValidGender(gender) ) {
-            throw new IllegalArgumentException("Pet requires valid gender");
+        if( gender == null ) {
+            return "Pet requires valid gender";
         }
+
+        // A missing weight is stored as 0
+        return PetWriter.checkPet(name, gender, getWeight(values));
+    }
+
+    private static int getWeight(ContentValues values) {
         Integer weight = values.getAsInteger(PetEntry.COLUMN_PET_WEIGHT);
+        return weight == null ? 0 : weight;
+    }
+
+    /**
+     * Insert many pets at once. All rows are written in a single transaction through one
+     * compiled statement, so the journal is synced once for the whole batch instead of once
+     * per row. Rows that fail validation are skipped and reported in one log line at the end.
+     * Returns the number of rows that were inserted.
+     */
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        final int match = sUriMatcher.match(uri);
+        if( match != PETS ) {
+            throw new IllegalArgumentException("Bulk insertion is not supported for " + uri);
+        }
+        long start = mMetrics.start();
+
+        SQLiteDatabase db = mDbHealper.getWritableDatabase();
+        int inserted = 0;
+        StringBuilder rejected = null;
 
-        // Checking for illegal weight if weight is present as less than 0
-        if( weight != null && weight < 0 ) {
-            throw new IllegalArgumentException("Pet must have a positive weight");
+        // Breeds are resolved ahead of the transaction, so new ones are kept in memory
+        long[] breedIds = new long[values.length];
+        for( int i = 0; i < values.length; i++ ) {
+            breedIds[i] = checkPetValues(values[i]) != null ? REJECTED
+                    : mBreeds.resolve(values[i].getAsString(PetEntry.COLUMN_PET_BREED));
         }
-        long id = db.insert(PetEntry.TABLE_NAME,null, values);
-        // Once we know the ID of the new row in the table,
-        // return the new URI with the ID appended to the end of it
-        if( id == -1 ){
-            Log.e(LOG_TAG,"Failed to insert row for " + uri);
-            return null;
+
+        // Immediate like the other writes: an exclusive transaction would also lock out the
+        // readers whenever write-ahead logging is off
+        db.beginTransactionNonExclusive();
+        try {
+            for( int i = 0; i < values.length; i++ ) {
+                ContentValues pet = values[i];
+                if( breedIds[i] == REJECTED ) {
+                    if( rejected == null ) {
+                        rejected = new StringBuilder();
+                    } else {
+                        rejected.append(',');
+                    }
+                    rejected.append(i);
+                    continue;
+                }
+                if( mWriter.insertRow(pet.getAsString(PetEntry.COLUMN_PET_NAME), breedIds[i],
+                        pet.getAsInteger(PetEntry.COLUMN_PET_GENDER), getWeight(pet)) != -1 ) {
+                    inserted++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if( rejected != null ) {
+            Log.w(LOG_TAG, "Rejected " + (values.length - inserted) + " of " + values.length
+                    + " pets for " + uri + " at rows [" + rejected + "]");
+        }
+        if( inserted > 0 ) {
+            notifyChange(uri);
+        }
+        mMetrics.record(PetMetrics.OP_BULK_INSERT, match - PETS, start, inserted, uri);
+        return inserted;
+    }
+
+    /**
+     * Apply a batch of operations inside one database transaction, so the batch is atomic and
+     * the journal is only synced on commit. Operations built with
+     * {@link ContentProviderOperation.Builder#withYieldAllowed} let waiting readers in before
+     * they run. Back-references are resolved against the results of the earlier operations,
+     * so an insert into {@link PetEntry#CONTENT_URI} can feed later updates in the same batch.
+     * Change notifications, and the deletion of the photos of deleted pets, are held back
+     * until the batch commits; notifications are sent once per URI.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        SQLiteDatabase db = mDbHealper.getWritableDatabase();
+        final int numOperations = operations.size();
+        final ContentProviderResult[] results = new ContentProviderResult[numOperations];
+        boolean successful = false;
+
+        mPendingNotifications.set(new LinkedHashSet<Uri>());
+        mPendingPhotoDeletes.set(new LongSparseArray<String>());
+        db.beginTransactionNonExclusive();
+        try {
+            for( int i = 0; i < numOperations; i++ ) {
+                ContentProviderOperation operation = operations.get(i);
+                if( i > 0 && operation.isYieldAllowed() ) {
+                    db.yieldIfContendedSafely();
+                }
+                results[i] = operation.apply(this, results, i);
+            }
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            db.endTransaction();
+            Set<Uri> pending = mPendingNotifications.get();
+            mPendingNotifications.remove();
+            LongSparseArray<String> photos = mPendingPhotoDeletes.get();
+            mPendingPhotoDeletes.remove();
+            if( successful ) {
+                // the photos of pets deleted by a rolled back batch are still in use
+                mPhotos.deletePhotos(photos);
+                sendNotifications(pending);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Run one of the compound operations of {@link PetCallEntry}, which each do in one round
+     * trip what would take a write and a query. The write and the read back of
+     * {@link PetCallEntry#METHOD_UPSERT_AND_FETCH} share one transaction; the other methods
+     * are a single statement. Unknown methods return null.
+     */
+    @Override
+    public Bundle call(@NonNull String method, @Nullable String arg, @Nullable Bundle extras) {
+        long start = mMetrics.start();
+        Bundle result;
+        switch (method) {
+            case PetCallEntry.METHOD_UPSERT_AND_FETCH:
+                result = upsertAndFetch(extras);
+                break;
+            case PetCallEntry.METHOD_COUNT_WHERE:
+                result = countWhere(arg, extras == null ? null
+                        : extras.getStringArray(PetCallEntry.KEY_SELECTION_ARGS));
+                break;
+            case PetCallEntry.METHOD_EXISTS_BY_NAME:
+                result = existsByName(arg);
+                break;
+            default:
+                return super.call(method, arg, extras);
+        }
+        mMetrics.record(PetMetrics.OP_CALL, PETS_CALL - PETS, start, 1, PetEntry.CONTENT_URI);
+        return result;
+    }
+
+    /**
+     * Insert or update the pet given by the extras and read it back, in one transaction.
+     * Observers are notified once it is committed.
+     */
+    private Bundle upsertAndFetch(Bundle extras) {
+        if( extras == null ) {
+            throw new IllegalArgumentException("Upsert requires the values of the pet");
+        }
+        ContentValues values = new ContentValues();
+        for( String column : PET_COLUMNS ) {
+            if( extras.containsKey(column) ) {
+                putValue(values, column, extras.get(column));
+            }
+        }
+        Long id = values.getAsLong(PetEntry._ID);
+        values.remove(PetEntry._ID);
+        checkUpdateValues(values);
+        // only thrown if the pet turns out to be new
+        String insertError = checkPetValues(values);
+        // the breed is resolved ahead of the transaction, like for an insert
+        ContentValues rowValues = toRowValues(values);
+
+        SQLiteDatabase db = mDbHealper.getWritableDatabase();
+        Bundle pet = null;
+        db.beginTransactionNonExclusive();
+        try {
+            if( id != null ) {
+                if( rowValues.size() > 0 ) {
+                    updateRow(db, id, rowValues);
+                }
+                pet = fetchPet(db, id);
+            }
+            if( pet == null ) {
+                if( insertError != null ) {
+                    throw new IllegalArgumentException(insertError);
+                }
+                id = insertRow(db, id, values, rowValues);
+                pet = fetchPet(db, id);
+                if( pet == null ) {
+                    throw new IllegalStateException("Failed to insert pet " + values);
+                }
+                pet.putBoolean(PetCallEntry.KEY_INSERTED, true);
+            } else {
+                pet.putBoolean(PetCallEntry.KEY_INSERTED, false);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        notifyChange(ContentUris.withAppendedId(PetEntry.CONTENT_URI, id));
+        return pet;
+    }
+
+    private static void putValue(ContentValues values, String column, Object value) {
+        if( value == null ) {
+            values.putNull(column);
+        } else if( value instanceof Number ) {
+            values.put(column, ((Number) value).longValue());
+        } else {
+            values.put(column, value.toString());
+        }
+    }
+
+    /**
+     * Update the pet inside the transaction of {@link #upsertAndFetch}. The pooled statements
+     * only lock once the thread holds the connection, so this cannot deadlock with a pooled
+     * update on another thread.
+     */
+    private void updateRow(SQLiteDatabase db, long id, ContentValues rowValues) {
+        int shape = PetStatementPool.shapeOf(rowValues);
+        if( shape >= 0 ) {
+            getStatementPool().updateById(id, rowValues, shape);
+        } else {
+            db.update(PetEntry.TABLE_NAME, rowValues, SELECTION_ID,
+                    new String[] { String.valueOf(id) });
+        }
+    }
+
+    /**
+     * Insert a checked new pet, under the given id unless it is null. Returns its id.
+     */
+    private long insertRow(SQLiteDatabase db, Long id, ContentValues values,
+                           ContentValues rowValues) {
+        if( id == null ) {
+            Long breedId = rowValues.getAsLong(PetEntry.COLUMN_PET_BREED_ID);
+            return mWriter.insertRow(values.getAsString(PetEntry.COLUMN_PET_NAME),
+                    breedId == null ? PetBreeds.NO_BREED : breedId,
+                    values.getAsInteger(PetEntry.COLUMN_PET_GENDER), getWeight(values));
+        }
+        ContentValues row = new ContentValues(rowValues);
+        row.put(PetEntry._ID, id);
+        row.put(PetEntry.COLUMN_PET_WEIGHT, getWeight(values));
+        return db.insertOrThrow(PetEntry.TABLE_NAME, null, row);
+    }
+
+    /**
+     * Returns the columns of the pet with the given id, or null if there is none.
+     */
+    private static Bundle fetchPet(SQLiteDatabase db, long id) {
+        Cursor row = db.query(PetEntry.VIEW_NAME, PET_COLUMNS, SELECTION_ID,
+                new String[] { String.valueOf(id) }, null, null, null);
+        try {
+            if( !row.moveToFirst() ) {
+                return null;
+            }
+            Pet pet = new PetCursorMapper(row).read();
+            Bundle result = new Bundle();
+            result.putLong(PetEntry._ID, pet.getId());
+            result.putString(PetEntry.COLUMN_PET_NAME, pet.getName());
+            result.putString(PetEntry.COLUMN_PET_BREED, pet.getBreed());
+            result.putInt(PetEntry.COLUMN_PET_GENDER, pet.getGender());
+            result.putInt(PetEntry.COLUMN_PET_WEIGHT, pet.getWeight());
+            return result;
+        } finally {
+            row.close();
+        }
+    }
+
+    /**
+     * Count the pets matching one of the {@link #COUNT_SELECTIONS} on the columns of the
+     * view, or every pet. Any other selection is rejected rather than run as caller SQL.
+     */
+    private Bundle countWhere(String selection, String[] selectionArgs) {
+        if( !TextUtils.isEmpty(selection) ) {
+            if( !Arrays.asList(COUNT_SELECTIONS).contains(selection) ) {
+                throw new IllegalArgumentException("Count does not support the selection "
+                        + selection);
+            }
+            if( selectionArgs == null || selectionArgs.length != 1 ) {
+                throw new IllegalArgumentException("Count requires one argument for "
+                        + selection);
+            }
+        }
+        SQLiteDatabase db = mDbHealper.getReadableDatabase();
+        String table = TextUtils.isEmpty(selection) ? PetEntry.TABLE_NAME : PetEntry.VIEW_NAME;
+        Bundle result = new Bundle();
+        result.putLong(PetCallEntry.KEY_COUNT,
+                DatabaseUtils.queryNumEntries(db, table, selection, selectionArgs));
+        return result;
+    }
+
+    /**
+     * Look up the lowest id of the pets with exactly the given name.
+     */
+    private Bundle existsByName(String name) {
+        if( name == null ) {
+            throw new IllegalArgumentException("Lookup by name requires a name");
+        }
+        SQLiteDatabase db = mDbHealper.getReadableDatabase();
+        long id = DatabaseUtils.longForQuery(db, SQL_FIRST_ID_BY_NAME, new String[] { name });
+        Bundle result = new Bundle();
+        result.putBoolean(PetCallEntry.KEY_EXISTS, id != -1);
+        result.putLong(PetEntry._ID, id);
+        return result;
+    }
+
+    /**
+     * Notify observers that the pets behind the given URI changed, and drop them from
+     * {@link #mCache}. Call it once the change is committed. Inside a batch the notification
+     * is only recorded, and sent by {@link #sendNotifications} after commit.
+     */
+    private void notifyChange(Uri uri) {
+        Set<Uri> pending = mPendingNotifications.get();
+        if( pending != null ) {
+            pending.add(uri);
+            return;
+        }
+        invalidateCache(uri);
+        getContext().getContentResolver().notifyChange(uri, null);
+    }
+
+    /**
+     * Drop the pets behind the given URI from {@link #mCache}: the one row of a pet URI,
+     * or every row for any other URI. Any write also drops the prefetched catalog page and
+     * makes the {@link PetSnapshot} catch up.
+     */
+    private void invalidateCache(Uri uri) {
+        PetCatalogPrefetch.invalidate();
+        PetSnapshot.invalidate();
+        if( sUriMatcher.match(uri) == PETS_ID ) {
+            mCache.invalidate(ContentUris.parseId(uri));
+        } else {
+            mCache.invalidateAll();
+        }
+    }
+
+    /**
+     * Send the notifications collected during a batch. A change to the whole collection
+     * already reaches every row observer, so the row URIs are dropped in that case.
+     */
+    private void sendNotifications(Set<Uri> pending) {
+        if( pending == null || pending.isEmpty() ) {
+            return;
+        }
+        ContentResolver resolver = getContext().getContentResolver();
+        if( pending.contains(PetEntry.CONTENT_URI) ) {
+            PetCatalogPrefetch.invalidate();
+            PetSnapshot.invalidate();
+            mCache.invalidateAll();
+            resolver.notifyChange(PetEntry.CONTENT_URI, null);
+            return;
+        }
+        for( Uri uri : pending ) {
+            invalidateCache(uri);
+            resolver.notifyChange(uri, null);
         }
-        return ContentUris.withAppendedId(uri, id);
     }
+
     /**
      * Delete the data at the given selection and selection and.
+     * Returns the number of rows that were deleted.
      */
     @Override
     public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
-        return 0;
+        final int match = sUriMatcher.match(uri);
+        if( match == PETS_METRICS ) {
+            mMetrics.reset();
+            return 0;
+        }
+        long start = mMetrics.start();
+        SQLiteDatabase db = mDbHealper.getWritableDatabase();
+        int rowsDeleted;
+        LongSparseArray<String> photos = new LongSparseArray<>();
+
+        switch (match) {
+            case PETS:
+                // Even deleting every pet goes in chunks: the search index and journal
+                // triggers fire for each pet, so SQLite cannot truncate the table and one
+                // statement would hold the write lock for seconds on a large table.
+                rowsDeleted = deletePetsInChunks(db, selection, selectionArgs, photos);
+                break;
+            case PETS_ID:
+                // Delete a single row given by the ID in the URI
+                selection = PetEntry._ID + "=?";
+                selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
+                rowsDeleted = deletePets(db, selection, selectionArgs, photos);
+                break;
+            case PETS_CHANGES:
+                // Compaction leaves the pets and what a mirror ends up with unchanged,
+                // so there is nobody to notify
+                rowsDeleted = compactChanges(db);
+                mMetrics.record(PetMetrics.OP_DELETE, match - PETS, start, rowsDeleted, uri);
+                return rowsDeleted;
+            default:
+                throw new IllegalArgumentException("Deletion is not supported for " + uri);
+        }
+
+        if( rowsDeleted != 0 ) {
+            deletePhotos(photos);
+            notifyChange(uri);
+        }
+        mMetrics.record(PetMetrics.OP_DELETE, match - PETS, start, rowsDeleted, uri);
+        return rowsDeleted;
+    }
+
+    /**
+     * Delete the photo files of deleted pets, once the deletion is committed. Inside a batch
+     * they are only recorded, and deleted by {@link #applyBatch} after commit.
+     */
+    private void deletePhotos(LongSparseArray<String> photos) {
+        LongSparseArray<String> pending = mPendingPhotoDeletes.get();
+        if( pending == null ) {
+            mPhotos.deletePhotos(photos);
+            return;
+        }
+        for( int i = 0; i < photos.size(); i++ ) {
+            pending.put(photos.keyAt(i), photos.valueAt(i));
+        }
+    }
+
+    /**
+     * Delete the pets matching the selection on the pets table in one transaction, and add
+     * the photo hashes they had to the given array, by pet id.
+     */
+    private static int deletePets(SQLiteDatabase db, String selection, String[] selectionArgs,
+                                  LongSparseArray<String> photos) {
+        db.beginTransaction();
+        try {
+            Cursor cursor = db.query(PetEntry.TABLE_NAME, new String[] { PetEntry._ID,
+                    PetEntry.COLUMN_PET_PHOTO }, DatabaseUtils.concatenateWhere(selection,
+                    SELECTION_HAS_PHOTO), selectionArgs, null, null, null);
+            try {
+                while( cursor.moveToNext() ) {
+                    photos.put(cursor.getLong(0), cursor.getString(1));
+                }
+            } finally {
+                cursor.close();
+            }
+            int deleted = db.delete(PetEntry.TABLE_NAME, selection, selectionArgs);
+            db.setTransactionSuccessful();
+            return deleted;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Delete the pets matching the selection {@link #DELETE_CHUNK_SIZE} rows at a time, each
+     * chunk in its own transaction. The write lock is released between chunks so other
+     * writers are not blocked for the whole deletion of a large selection. Without a
+     * selection every pet is deleted, walking the table in id order.
+     */
+    private static int deletePetsInChunks(SQLiteDatabase db, String selection,
+                                          String[] selectionArgs,
+                                          LongSparseArray<String> photos) {
+        String chunkSelection;
+        if( TextUtils.isEmpty(selection) ) {
+            chunkSelection = PetEntry._ID + " IN (SELECT " + PetEntry._ID + " FROM "
+                    + PetEntry.TABLE_NAME + " ORDER BY " + PetEntry._ID + " LIMIT "
+                    + DELETE_CHUNK_SIZE + ")";
+            selectionArgs = null;
+        } else {
+            chunkSelection = PetEntry._ID + " IN (SELECT " + PetEntry._ID + " FROM "
+                    + PetEntry.VIEW_NAME + " WHERE " + selection + " LIMIT "
+                    + DELETE_CHUNK_SIZE + ")";
+        }
+        int total = 0;
+        int deleted;
+        do {
+            deleted = deletePets(db, chunkSelection, selectionArgs, photos);
+            total += deleted;
+        } while( deleted == DELETE_CHUNK_SIZE );
+        return total;
     }
 
     /**
@@ -157,30 +1652,50 @@ public class PetProvider extends ContentProvider {
                       String selection,
                       @Nullable String[] selectionArgs) {
         final int match = sUriMatcher.match(uri);
+        long start = mMetrics.start();
+        int rowsUpdated;
 
         switch(match) {
+            case PETS_METRICS:
+                Boolean enabled = values.getAsBoolean(PetMetricsEntry.COLUMN_ENABLED);
+                if( enabled == null ) {
+                    throw new IllegalArgumentException("Metrics update requires "
+                            + PetMetricsEntry.COLUMN_ENABLED);
+                }
+                mMetrics.setEnabled(enabled);
+                return 0;
             case PETS:
-                updatePet(uri,values,selection,
-                        selectionArgs);
+                // Every pet matching the selection, in a single UPDATE statement
+                rowsUpdated = updatePet(uri, values, selection, selectionArgs);
+                break;
             case PETS_ID:
                 // For the PET_ID code, extract out the ID from the URI,
-                // so we know which row to update. Selection will be "_id=?"
-                // and select arguments will be a String array containing the actual
-                // ID .
-                selection = PetEntry._ID + "=?";
-                selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
-                return updatePet(uri,values, selection, selectionArgs);
+                // so we know which row to update. A selection given by the caller is a
+                // condition on that row, e.g. a compare-and-set of the weight.
+                long id = ContentUris.parseId(uri);
+                if( TextUtils.isEmpty(selection) ) {
+                    rowsUpdated = updatePetById(uri, id, values);
+                } else {
+                    rowsUpdated = updatePet(uri, values,
+                            DatabaseUtils.concatenateWhere(SELECTION_ID, selection),
+                            DatabaseUtils.appendSelectionArgs(
+                                    new String[] { String.valueOf(id) }, selectionArgs));
+                }
+                break;
             default:
                 throw new IllegalArgumentException("Update is not suppored for " + uri );
 
         }
-
+        mMetrics.record(PetMetrics.OP_UPDATE, match - PETS, start, rowsUpdated, uri);
+        return rowsUpdated;
     }
 
     /**
      * Update pets in he database with the given content valuees. Apply the changes to
      * specified in the selection and selection and selection arguments (which could be 0 or 1 both
      * Return the number of rows that were successfully update.
+     * The values are validated once and every matching pet is changed by one UPDATE
+     * statement, so the update is atomic and observers are notified once.
      * @param uri content uri
      * @param values ContentValues object passed as attributes to change
      * @param selection the where clause statement
@@ -190,8 +1705,86 @@ public class PetProvider extends ContentProvider {
                           ContentValues values,
                           String selection,
                           String[] selectionArgs){
-        // TODO: UPDATE the selected pets in the pets database table with the given ContentValues object
-        //  validating all the entry to be inserted */
+        checkUpdateValues(values);
+        if( values.size() == 0) {
+            return 0;
+        }
+        if( !TextUtils.isEmpty(selection) ) {
+            // the selection is on the columns of the view, the breed name included
+            selection = PetEntry._ID + " IN (SELECT " + PetEntry._ID + " FROM "
+                    + PetEntry.VIEW_NAME + " WHERE " + selection + ")";
+        }
+        return updateRows(uri, toRowValues(values), selection, selectionArgs);
+    }
+
+    /**
+     * Update the rows of the pets table matching a selection on the table itself, with
+     * values already checked and turned into row values.
+     */
+    private int updateRows(Uri uri, ContentValues rowValues, String selection,
+                           String[] selectionArgs) {
+        // opening the db in writableDatabase mode
+        SQLiteDatabase db = mDbHealper.getWritableDatabase();
+        // running the update query
+        int noOfUpdated = db.update(PetEntry.TABLE_NAME, rowValues, selection, selectionArgs);
+        if( noOfUpdated > 0 ) {
+            notifyChange(uri);
+        }
+        return noOfUpdated;
+    }
+
+    /**
+     * Update the single pet with the given id. The usual column sets go through a compiled
+     * statement of {@link #mStatements}, anything else through a plain UPDATE by id; the
+     * id is a column of the table, so the view of {@link #updatePet} is not needed.
+     */
+    private int updatePetById(Uri uri, long id, ContentValues values) {
+        checkUpdateValues(values);
+        ContentValues rowValues = toRowValues(values);
+        int shape = PetStatementPool.shapeOf(rowValues);
+        if( shape < 0 ) {
+            if( rowValues.size() == 0 ) {
+                return 0;
+            }
+            return updateRows(uri, rowValues, SELECTION_ID, new String[] { String.valueOf(id) });
+        }
+        int noOfUpdated = getStatementPool().updateById(id, rowValues, shape);
+        if( noOfUpdated > 0 ) {
+            notifyChange(uri);
+        }
+        return noOfUpdated;
+    }
+
+    private synchronized PetStatementPool getStatementPool() {
+        if( mStatements == null ) {
+            mStatements = new PetStatementPool(mDbHealper.getWritableDatabase());
+        }
+        return mStatements;
+    }
+
+    /**
+     * Returns the values to store in the pets table: a breed name is replaced by the id of
+     * the breed. The given values are left as they are.
+     */
+    private ContentValues toRowValues(ContentValues values) {
+        if( !values.containsKey(PetEntry.COLUMN_PET_BREED) ) {
+            return values;
+        }
+        ContentValues rowValues = new ContentValues(values);
+        long breedId = mBreeds.resolve(rowValues.getAsString(PetEntry.COLUMN_PET_BREED));
+        rowValues.remove(PetEntry.COLUMN_PET_BREED);
+        if( breedId == PetBreeds.NO_BREED ) {
+            rowValues.putNull(PetEntry.COLUMN_PET_BREED_ID);
+        } else {
+            rowValues.put(PetEntry.COLUMN_PET_BREED_ID, breedId);
+        }
+        return rowValues;
+    }
+
+    /**
+     * Check the content values of an update, only the columns present are checked.
+     */
+    private static void checkUpdateValues(ContentValues values) {
         // validating the pet name
         if( values.containsKey(PetEntry.COLUMN_PET_NAME)){
             String name = values.getAsString(PetEntry.COLUMN_PET_NAME);
@@ -214,13 +1807,29 @@ public class PetProvider extends ContentProvider {
             }
         }
         // No need to check the breed any value is valid including null
-        if( values.size() == 0) {
-            return 0;
+        if( values.containsKey(PetEntry.COLUMN_PET_PHOTO) ) {
+            throw new IllegalArgumentException("The photo of a pet is written through "
+                    + "its photo URI");
         }
-        // opening the db in writableDatabase mode
-        SQLiteDatabase db = mDbHealper.getWritableDatabase();
-        // running the update query
-        int noOfUpdated = db.update(PetEntry.TABLE_NAME, values, selection, selectionArgs);
-        return noOfUpdated;
+    }
+
+    /**
+     * Print the provider metrics and cache counters. Pass "enable", "disable" or "reset"
+     * as argument to change the metrics first, e.g.
+     * {@code adb shell dumpsys activity provider com.example.android.pets reset}.
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        if( args != null && args.length > 0 ) {
+            if( "enable".equals(args[0]) ) {
+                mMetrics.setEnabled(true);
+            } else if( "disable".equals(args[0]) ) {
+                mMetrics.setEnabled(false);
+            } else if( "reset".equals(args[0]) ) {
+                mMetrics.reset();
+            }
+        }
+        mMetrics.dump(writer);
+        writer.println(mCache);
     }
 }
@@ -0,0 +1,772 @@
+package com.example.android.pets.data;
+
+import android.content.Context;
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.database.CursorIndexOutOfBoundsException;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.pets.data.PetContract.PetChangeEntry;
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * An in-memory copy of the pets, stored column by column, that filters them by gender and
+ * weight and sorts them without querying the database, for screens that refilter on every
+ * keystroke.
+ *
+ * Ids, genders and weights are primitive arrays indexed by slot, in id order. Names and
+ * breeds are codes into one dictionary of strings. For every sort order but the id the
+ * slots are kept sorted in a permutation, next to the gender and weight of each pet, so a
+ * query is one pass over three arrays.
+ *
+ * {@link PetProvider} answers {@link PetEntry#CONTENT_FILTER_URI} from it. The snapshot is
+ * loaded from the database on first use. After that it catches up with the
+ * writes {@link PetProvider} reports through the journal of changes, see
+ * {@link PetChangeEntry}: only the pets changed since are read back. Every catch-up builds
+ * new arrays, so the cursors already returned keep reading the pets as they were.
+ */
+public final class PetSnapshot {
+
+    /** Gender filter matching every pet */
+    public static final int GENDER_ANY = -1;
+
+    /** Sort orders, the id breaks ties. Breeds are ordered as by the provider, null first. */
+    public static final int SORT_ID = 0;
+    public static final int SORT_NAME = 1;
+    public static final int SORT_BREED = 2;
+    public static final int SORT_WEIGHT = 3;
+
+    /** Beyond this many changed pets the permutations are sorted again instead of patched */
+    private static final int PATCH_LIMIT = 64;
+
+    /** Gender of the slot of a deleted pet */
+    private static final byte DELETED = -1;
+
+    /** Breed code of a pet without a breed */
+    private static final int NO_BREED = -1;
+
+    private static final String SQL_MAX_SEQ = "SELECT IFNULL(MAX(" + PetChangeEntry.COLUMN_SEQ
+            + "), 0) FROM " + PetChangeEntry.TABLE_NAME;
+    private static final String SQL_HORIZON = "SELECT " + PetChangeEntry.COLUMN_SEQ + " FROM "
+            + PetChangeEntry.HORIZON_TABLE_NAME;
+    private static final String SQL_CHANGED_IDS = "SELECT DISTINCT "
+            + PetChangeEntry.COLUMN_PET_ID + " FROM " + PetChangeEntry.TABLE_NAME + " WHERE "
+            + PetChangeEntry.COLUMN_SEQ + " > ? ORDER BY " + PetChangeEntry.COLUMN_PET_ID;
+    private static final String SQL_CHANGED_PETS = "SELECT " + PetEntry._ID + ", "
+            + PetEntry.COLUMN_PET_NAME + ", " + PetEntry.COLUMN_PET_BREED + ", "
+            + PetEntry.COLUMN_PET_GENDER + ", " + PetEntry.COLUMN_PET_WEIGHT + " FROM "
+            + PetEntry.VIEW_NAME + " WHERE " + PetEntry._ID + " IN (" + SQL_CHANGED_IDS + ")";
+
+    /** Bumped by {@link #invalidate} on every write, guarded by the class */
+    private static long sGeneration;
+
+    private static PetSnapshot sInstance;
+
+    private final PetDbHelper mDbHelper;
+
+    /** The pets as of the last load or catch-up, null until first used */
+    private volatile Columns mColumns;
+
+    /** Generation and journal sequence number mColumns is up to date with, guarded by this */
+    private long mGeneration;
+    private long mSeq;
+
+    /** Codes of the names and breeds in mColumns, guarded by this */
+    private Dictionary mDictionary;
+
+    /**
+     * Returns the snapshot of the process. Nothing is loaded until the first query.
+     */
+    public static synchronized PetSnapshot getInstance(Context context) {
+        if( sInstance == null ) {
+            sInstance = new PetSnapshot(PetDbHelper.getInstance(context.getApplicationContext()));
+        }
+        return sInstance;
+    }
+
+    private PetSnapshot(PetDbHelper dbHelper) {
+        mDbHelper = dbHelper;
+    }
+
+    /**
+     * Note a committed write to the pets, the next query catches up with it.
+     */
+    static synchronized void invalidate() {
+        sGeneration++;
+    }
+
+    private static synchronized long getGeneration() {
+        return sGeneration;
+    }
+
+    /**
+     * Returns the pets with the given gender and a weight in [minWeight, maxWeight], with the
+     * columns of {@link PetEntry#PROJECTION_ALL}. The cursor reads from memory and does not
+     * change when the pets do; query again once {@link PetEntry#CONTENT_URI} is notified.
+     * @param gender     one of the GENDER_ constants of {@link PetEntry}, or {@link #GENDER_ANY}
+     * @param sortOrder  one of the SORT_ constants
+     * @param descending whether to return the pets in the reverse of the sort order
+     * @throws IllegalArgumentException if the sort order is unknown
+     */
+    public Cursor query(int gender, int minWeight, int maxWeight, int sortOrder,
+                        boolean descending) {
+        if( sortOrder < SORT_ID || sortOrder > SORT_WEIGHT ) {
+            throw new IllegalArgumentException("Unknown snapshot sort order " + sortOrder);
+        }
+        Columns columns = update();
+        int[] rows;
+        int count = 0;
+        if( sortOrder == SORT_ID ) {
+            byte[] genders = columns.genders;
+            int[] weights = columns.weights;
+            rows = new int[columns.live];
+            for( int slot = 0; slot < columns.size; slot++ ) {
+                int slotGender = genders[slot];
+                int weight = weights[slot];
+                if( slotGender != DELETED && (gender == GENDER_ANY || slotGender == gender)
+                        && weight >= minWeight && weight <= maxWeight ) {
+                    rows[count++] = slot;
+                }
+            }
+        } else {
+            Order order = columns.orders[sortOrder];
+            int from = 0;
+            int to = columns.live;
+            if( sortOrder == SORT_WEIGHT ) {
+                // only the run of the weight range is visited
+                from = order.firstWeightAtLeast(to, minWeight);
+                to = maxWeight == Integer.MAX_VALUE ? to : order.firstWeightAtLeast(to, maxWeight + 1);
+            }
+            // the pets are visited in order, reading only the arrays of the permutation
+            int[] slots = order.slots;
+            byte[] genders = order.genders;
+            int[] weights = order.weights;
+            // without a branch per pet: the slot is always written, and kept only on a match
+            int genderMask = gender == GENDER_ANY ? 0 : 3;
+            int genderValue = gender & genderMask;
+            rows = new int[Math.max(to - from, 0)];
+            for( int i = from; i < to; i++ ) {
+                int weight = weights[i];
+                rows[count] = slots[i];
+                count += (genders[i] & genderMask) == genderValue & weight >= minWeight
+                        & weight <= maxWeight ? 1 : 0;
+            }
+        }
+        if( descending ) {
+            for( int i = 0, j = count - 1; i < j; i++, j-- ) {
+                int slot = rows[i];
+                rows[i] = rows[j];
+                rows[j] = slot;
+            }
+        }
+        return new SnapshotCursor(columns, rows, count);
+    }
+
+    /**
+     * Drop the snapshot, the next query loads it again.
+     */
+    public synchronized void release() {
+        mColumns = null;
+        mDictionary = null;
+    }
+
+    /**
+     * Returns the bytes held per pet by the arrays of the snapshot, without the strings.
+     */
+    public static int bytesPerPet() {
+        // id, gender, weight, name and breed codes, and the slot, gender and weight of each
+        // permutation
+        return 8 + 1 + 4 + 4 + 4 + 3 * (4 + 1 + 4);
+    }
+
+    @Override
+    public String toString() {
+        Columns columns = mColumns;
+        return "PetSnapshot[pets=" + (columns == null ? 0 : columns.live)
+                + ",slots=" + (columns == null ? 0 : columns.size)
+                + ",strings=" + (columns == null ? 0 : columns.strings.length)
+                + ",bytesPerPet=" + bytesPerPet() + "]";
+    }
+
+    /**
+     * Returns columns up to date with every write reported before the call.
+     */
+    private synchronized Columns update() {
+        long generation = getGeneration();
+        Columns columns = mColumns;
+        if( columns != null && generation == mGeneration ) {
+            return columns;
+        }
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        columns = columns == null ? load(db) : catchUp(db, columns);
+        mGeneration = generation;
+        mColumns = columns;
+        return columns;
+    }
+
+    /**
+     * Read every pet. The journal position is read first, so a write committing meanwhile is
+     * applied again by the next catch-up, which is harmless.
+     */
+    private Columns load(SQLiteDatabase db) {
+        mSeq = DatabaseUtils.longForQuery(db, SQL_MAX_SEQ, null);
+        mDictionary = new Dictionary();
+        Cursor cursor = db.query(PetEntry.VIEW_NAME, PetEntry.PROJECTION_ALL, null, null,
+                null, null, PetEntry._ID);
+        Columns columns;
+        try {
+            columns = new Columns(cursor.getCount());
+            while( cursor.moveToNext() ) {
+                columns.append(cursor.getLong(0), mDictionary.encode(cursor.getString(1)),
+                        encodeBreed(cursor.getString(2)), cursor.getInt(3), cursor.getInt(4));
+            }
+        } finally {
+            cursor.close();
+        }
+        columns.strings = mDictionary.strings();
+        columns.sort();
+        return columns;
+    }
+
+    /**
+     * Apply the changes logged since the last load or catch-up to a copy of the columns.
+     * Falls back to a full load when a large part of the pets changed, or when deletes
+     * logged since have expired from the journal.
+     */
+    private Columns catchUp(SQLiteDatabase db, Columns old) {
+        if( DatabaseUtils.longForQuery(db, SQL_HORIZON, null) > mSeq ) {
+            return load(db);
+        }
+        long seq = DatabaseUtils.longForQuery(db, SQL_MAX_SEQ, null);
+        String[] since = { String.valueOf(mSeq) };
+        long[] changed = queryIds(db, since);
+        if( changed.length == 0 ) {
+            mSeq = seq;
+            return old;
+        }
+        if( changed.length > old.live / 4 ) {
+            return load(db);
+        }
+
+        Columns columns = old.copy(changed.length);
+        boolean patch = changed.length <= PATCH_LIMIT;
+        int next = 0;
+        Cursor cursor = db.rawQuery(SQL_CHANGED_PETS, since);
+        try {
+            while( cursor.moveToNext() ) {
+                long id = cursor.getLong(0);
+                // the pets changed but not found are deleted
+                for( ; next < changed.length && changed[next] < id; next++ ) {
+                    columns.delete(changed[next], patch);
+                }
+                if( next < changed.length && changed[next] == id ) {
+                    next++;
+                }
+                int name = mDictionary.encode(cursor.getString(1));
+                int breed = encodeBreed(cursor.getString(2));
+                // the strings may have grown, the permutations compare them
+                columns.strings = mDictionary.strings();
+                if( !columns.put(id, name, breed, cursor.getInt(3), cursor.getInt(4), patch) ) {
+                    // an id below the last one that was never seen, start over
+                    return load(db);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        for( ; next < changed.length; next++ ) {
+            columns.delete(changed[next], patch);
+        }
+        if( !patch ) {
+            columns.sort();
+        }
+        mSeq = seq;
+        return columns;
+    }
+
+    private int encodeBreed(String breed) {
+        return breed == null ? NO_BREED : mDictionary.encode(breed);
+    }
+
+    private static long[] queryIds(SQLiteDatabase db, String[] since) {
+        Cursor cursor = db.rawQuery(SQL_CHANGED_IDS, since);
+        try {
+            long[] ids = new long[cursor.getCount()];
+            for( int i = 0; cursor.moveToNext(); i++ ) {
+                ids[i] = cursor.getLong(0);
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Compares like SQLite's NOCASE collation: ASCII letters ignoring case, the rest by code.
+     */
+    private static int compareNoCase(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        for( int i = 0; i < length; i++ ) {
+            int ca = a.charAt(i);
+            int cb = b.charAt(i);
+            if( ca >= 'A' && ca <= 'Z' ) {
+                ca += 'a' - 'A';
+            }
+            if( cb >= 'A' && cb <= 'Z' ) {
+                cb += 'a' - 'A';
+            }
+            if( ca != cb ) {
+                return ca - cb;
+            }
+        }
+        return a.length() - b.length();
+    }
+
+    /**
+     * The distinct names and breeds, a code is an index into the strings. Codes are only
+     * added, so older columns keep their strings when the array grows.
+     */
+    private static final class Dictionary {
+        private final HashMap<String, Integer> mCodes = new HashMap<>();
+        private String[] mStrings = new String[64];
+        private int mSize;
+
+        int encode(String string) {
+            Integer code = mCodes.get(string);
+            if( code != null ) {
+                return code;
+            }
+            if( mSize == mStrings.length ) {
+                mStrings = Arrays.copyOf(mStrings, mSize * 2);
+            }
+            mStrings[mSize] = string;
+            mCodes.put(string, mSize);
+            return mSize++;
+        }
+
+        String[] strings() {
+            return mStrings;
+        }
+    }
+
+    /**
+     * The pets, one slot each in id order. A deleted pet leaves its slot, marked
+     * {@link #DELETED}, until the next load. Not changed once published in mColumns.
+     */
+    private static final class Columns {
+        int size;
+        int live;
+        long[] ids;
+        byte[] genders;
+        int[] weights;
+        int[] names;
+        int[] breeds;
+        String[] strings;
+
+        /** The live slots by name, breed and weight, indexed by sort order */
+        final Order[] orders = new Order[SORT_WEIGHT + 1];
+
+        Columns(int capacity) {
+            ids = new long[capacity];
+            genders = new byte[capacity];
+            weights = new int[capacity];
+            names = new int[capacity];
+            breeds = new int[capacity];
+        }
+
+        /**
+         * Returns a copy with room for the given number of new pets.
+         */
+        Columns copy(int extra) {
+            Columns copy = new Columns(0);
+            int capacity = size + extra;
+            copy.size = size;
+            copy.live = live;
+            copy.ids = Arrays.copyOf(ids, capacity);
+            copy.genders = Arrays.copyOf(genders, capacity);
+            copy.weights = Arrays.copyOf(weights, capacity);
+            copy.names = Arrays.copyOf(names, capacity);
+            copy.breeds = Arrays.copyOf(breeds, capacity);
+            copy.strings = strings;
+            for( int sortOrder = SORT_NAME; sortOrder <= SORT_WEIGHT; sortOrder++ ) {
+                copy.orders[sortOrder] = orders[sortOrder].copy(live + extra);
+            }
+            return copy;
+        }
+
+        void append(long id, int name, int breed, int gender, int weight) {
+            if( size == ids.length ) {
+                int capacity = size + size / 2 + 1;
+                ids = Arrays.copyOf(ids, capacity);
+                genders = Arrays.copyOf(genders, capacity);
+                weights = Arrays.copyOf(weights, capacity);
+                names = Arrays.copyOf(names, capacity);
+                breeds = Arrays.copyOf(breeds, capacity);
+            }
+            if( orders[SORT_NAME] != null && live == orders[SORT_NAME].slots.length ) {
+                for( int sortOrder = SORT_NAME; sortOrder <= SORT_WEIGHT; sortOrder++ ) {
+                    orders[sortOrder] = orders[sortOrder].copy(live + live / 2 + 1);
+                }
+            }
+            int slot = size++;
+            ids[slot] = id;
+            set(slot, name, breed, gender, weight);
+            live++;
+        }
+
+        private void set(int slot, int name, int breed, int gender, int weight) {
+            names[slot] = name;
+            breeds[slot] = breed;
+            genders[slot] = (byte) gender;
+            weights[slot] = weight;
+        }
+
+        /**
+         * Insert or update a pet. Returns false if a new pet has an id below the last slot.
+         * @param patch whether to move the pet in the permutations, or leave them to
+         *              {@link #sort}
+         */
+        boolean put(long id, int name, int breed, int gender, int weight, boolean patch) {
+            int slot = Arrays.binarySearch(ids, 0, size, id);
+            if( slot < 0 ) {
+                if( size > 0 && id < ids[size - 1] ) {
+                    return false;
+                }
+                append(id, name, breed, gender, weight);
+                slot = size - 1;
+            } else if( genders[slot] == DELETED ) {
+                set(slot, name, breed, gender, weight);
+                live++;
+            } else {
+                if( patch ) {
+                    removeFromOrders(slot);
+                }
+                set(slot, name, breed, gender, weight);
+            }
+            if( patch ) {
+                insertIntoOrders(slot);
+            }
+            return true;
+        }
+
+        void delete(long id, boolean patch) {
+            int slot = Arrays.binarySearch(ids, 0, size, id);
+            if( slot < 0 || genders[slot] == DELETED ) {
+                return;
+            }
+            if( patch ) {
+                removeFromOrders(slot);
+            }
+            genders[slot] = DELETED;
+            live--;
+        }
+
+        /**
+         * Remove the slot from the permutations, before its values change. The permutations
+         * still hold live - 1 slots afterwards, as the caller counts the pet out or back in.
+         */
+        private void removeFromOrders(int slot) {
+            int length = live - 1;
+            for( int sortOrder = SORT_NAME; sortOrder <= SORT_WEIGHT; sortOrder++ ) {
+                Order order = orders[sortOrder];
+                order.remove(length, search(order.slots, length + 1, slot, sortOrder));
+            }
+        }
+
+        /**
+         * Insert the slot into the permutations, which hold live - 1 slots.
+         */
+        private void insertIntoOrders(int slot) {
+            int length = live - 1;
+            for( int sortOrder = SORT_NAME; sortOrder <= SORT_WEIGHT; sortOrder++ ) {
+                Order order = orders[sortOrder];
+                order.insert(length, search(order.slots, length, slot, sortOrder), slot,
+                        genders[slot], weights[slot]);
+            }
+        }
+
+        /**
+         * Returns the index of the first of the length slots of the permutation not before
+         * the given slot.
+         */
+        private int search(int[] order, int length, int slot, int sortOrder) {
+            int low = 0;
+            int high = length;
+            while( low < high ) {
+                int mid = (low + high) >>> 1;
+                if( compare(order[mid], slot, sortOrder) < 0 ) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private int compare(int a, int b, int sortOrder) {
+            int result;
+            switch( sortOrder ) {
+                case SORT_NAME:
+                    result = strings[names[a]].compareTo(strings[names[b]]);
+                    break;
+                case SORT_BREED:
+                    if( breeds[a] == NO_BREED || breeds[b] == NO_BREED ) {
+                        result = (breeds[a] == NO_BREED ? 0 : 1) - (breeds[b] == NO_BREED ? 0 : 1);
+                    } else {
+                        result = compareNoCase(strings[breeds[a]], strings[breeds[b]]);
+                    }
+                    break;
+                default:
+                    result = weights[a] < weights[b] ? -1 : (weights[a] == weights[b] ? 0 : 1);
+            }
+            // slots are in id order
+            return result != 0 ? result : a - b;
+        }
+
+        /**
+         * Build the permutations from scratch. Each is one sort of (rank, slot) pairs packed
+         * into longs, the rank of a string being its place among the strings used.
+         */
+        void sort() {
+            orders[SORT_NAME] = sortBy(rank(names, new Comparator<String>() {
+                @Override
+                public int compare(String a, String b) {
+                    return a.compareTo(b);
+                }
+            }), names);
+            orders[SORT_BREED] = sortBy(rank(breeds, new Comparator<String>() {
+                @Override
+                public int compare(String a, String b) {
+                    return compareNoCase(a, b);
+                }
+            }), breeds);
+            orders[SORT_WEIGHT] = sortBy(null, weights);
+        }
+
+        /**
+         * Returns the rank of every code of the column, 0 for {@link #NO_BREED}; strings equal
+         * for the comparator share a rank.
+         */
+        private int[] rank(int[] codes, Comparator<String> comparator) {
+            boolean[] used = new boolean[strings.length];
+            int count = 0;
+            for( int slot = 0; slot < size; slot++ ) {
+                int code = codes[slot];
+                if( genders[slot] != DELETED && code != NO_BREED && !used[code] ) {
+                    used[code] = true;
+                    count++;
+                }
+            }
+            String[] sorted = new String[count];
+            for( int code = 0, i = 0; code < used.length; code++ ) {
+                if( used[code] ) {
+                    sorted[i++] = strings[code];
+                }
+            }
+            Arrays.sort(sorted, comparator);
+            HashMap<String, Integer> ranks = new HashMap<>(count * 2);
+            int rank = 0;
+            for( int i = 0; i < count; i++ ) {
+                if( i == 0 || comparator.compare(sorted[i - 1], sorted[i]) != 0 ) {
+                    rank++;
+                }
+                ranks.put(sorted[i], rank);
+            }
+            int[] codeRanks = new int[strings.length];
+            for( int code = 0; code < used.length; code++ ) {
+                if( used[code] ) {
+                    codeRanks[code] = ranks.get(strings[code]);
+                }
+            }
+            return codeRanks;
+        }
+
+        /**
+         * Returns the live slots sorted by the ranks of their codes, or by the values
+         * themselves when there are no ranks, then by slot.
+         */
+        private Order sortBy(int[] codeRanks, int[] values) {
+            long[] keys = new long[live];
+            int count = 0;
+            for( int slot = 0; slot < size; slot++ ) {
+                if( genders[slot] == DELETED ) {
+                    continue;
+                }
+                int value = values[slot];
+                long key = codeRanks == null ? value : (value == NO_BREED ? 0 : codeRanks[value]);
+                keys[count++] = (key << 32) | slot;
+            }
+            Arrays.sort(keys);
+            Order order = new Order(new int[live], new byte[live], new int[live]);
+            for( int i = 0; i < live; i++ ) {
+                int slot = (int) keys[i];
+                order.slots[i] = slot;
+                order.genders[i] = genders[slot];
+                order.weights[i] = weights[slot];
+            }
+            return order;
+        }
+    }
+
+    /**
+     * The live slots in one sort order, along with the gender and weight of each, so a
+     * filter reads the pets in order without going through the slots.
+     */
+    private static final class Order {
+        int[] slots;
+        byte[] genders;
+        int[] weights;
+
+        Order(int[] slots, byte[] genders, int[] weights) {
+            this.slots = slots;
+            this.genders = genders;
+            this.weights = weights;
+        }
+
+        Order copy(int capacity) {
+            return new Order(Arrays.copyOf(slots, capacity), Arrays.copyOf(genders, capacity),
+                    Arrays.copyOf(weights, capacity));
+        }
+
+        void remove(int length, int index) {
+            System.arraycopy(slots, index + 1, slots, index, length - index);
+            System.arraycopy(genders, index + 1, genders, index, length - index);
+            System.arraycopy(weights, index + 1, weights, index, length - index);
+        }
+
+        void insert(int length, int index, int slot, byte gender, int weight) {
+            System.arraycopy(slots, index, slots, index + 1, length - index);
+            System.arraycopy(genders, index, genders, index + 1, length - index);
+            System.arraycopy(weights, index, weights, index + 1, length - index);
+            slots[index] = slot;
+            genders[index] = gender;
+            weights[index] = weight;
+        }
+
+        /**
+         * Returns the index of the first pet weighing at least the weight, in the weight order.
+         */
+        int firstWeightAtLeast(int length, int weight) {
+            int low = 0;
+            int high = length;
+            while( low < high ) {
+                int mid = (low + high) >>> 1;
+                if( weights[mid] < weight ) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * The pets of a query, read straight from the arrays of the snapshot.
+     */
+    private static final class SnapshotCursor extends AbstractCursor {
+        private static final String[] COLUMNS = PetEntry.PROJECTION_ALL.clone();
+
+        private final Columns mColumns;
+        private final int[] mRows;
+        private final int mCount;
+
+        SnapshotCursor(Columns columns, int[] rows, int count) {
+            mColumns = columns;
+            mRows = rows;
+            mCount = count;
+        }
+
+        @Override
+        public int getCount() {
+            return mCount;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return COLUMNS;
+        }
+
+        @Override
+        public String getString(int column) {
+            int slot = mRows[getPosition()];
+            switch( column ) {
+                case 1:
+                    return mColumns.strings[mColumns.names[slot]];
+                case 2:
+                    int breed = mColumns.breeds[slot];
+                    return breed == NO_BREED ? null : mColumns.strings[breed];
+                case 0:
+                case 3:
+                case 4:
+                    return String.valueOf(getLong(column));
+                default:
+                    throw columnOutOfBounds(column);
+            }
+        }
+
+        @Override
+        public long getLong(int column) {
+            int slot = mRows[getPosition()];
+            switch( column ) {
+                case 0:
+                    return mColumns.ids[slot];
+                case 3:
+                    return mColumns.genders[slot];
+                case 4:
+                    return mColumns.weights[slot];
+                case 1:
+                case 2:
+                    return Long.parseLong(getString(column));
+                default:
+                    throw columnOutOfBounds(column);
+            }
+        }
+
+        private static CursorIndexOutOfBoundsException columnOutOfBounds(int column) {
+            return new CursorIndexOutOfBoundsException("Requested column: " + column
+                    + ", # of columns: " + COLUMNS.length);
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return getLong(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            return getLong(column);
+        }
+
+        @Override
+        public int getType(int column) {
+            if( column == 1 || column == 2 ) {
+                return isNull(column) ? FIELD_TYPE_NULL : FIELD_TYPE_STRING;
+            }
+            if( column < 0 || column >= COLUMNS.length ) {
+                throw columnOutOfBounds(column);
+            }
+            return FIELD_TYPE_INTEGER;
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return column == 2 && mColumns.breeds[mRows[getPosition()]] == NO_BREED;
+        }
+    }
+}
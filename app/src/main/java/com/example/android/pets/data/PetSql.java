@@ -0,0 +1,243 @@
+package com.example.android.pets.data;
+
+/**
+ * The SQL of the full-text index of the pets and of the journal of changes to them, see
+ * {@link PetContract.PetChangeEntry}: their tables and triggers, created by
+ * {@link PetDbHelper}, and the statements {@link PetProvider} searches, reads and compacts
+ * them with, along with the names of the pets they refer to.
+ *
+ * It is plain Java, free of the Android framework, so the benchmark module runs the very
+ * statements of the app against SQLite on the JVM. Every argument of the statements is bound
+ * as text, like {@code SQLiteProgram.bindAllArgsAsStrings} does.
+ */
+public final class PetSql {
+
+    /** Names of the pets, see {@link PetContract.PetEntry} */
+    public static final String PETS_TABLE = "pets";
+    public static final String PETS_VIEW = "pets_view";
+    public static final String COLUMN_ID = "_id";
+    public static final String COLUMN_NAME = "name";
+    public static final String COLUMN_BREED = "breed";
+    public static final String COLUMN_BREED_ID = "breed_id";
+    public static final String COLUMN_GENDER = "gender";
+    public static final String COLUMN_WEIGHT = "weight";
+    public static final String COLUMN_PHOTO = "photo_hash";
+
+    /** The full-text index of the name and breed of the pets, the pet id is its docid */
+    public static final String FTS_TABLE = "pets_fts";
+
+    /** Names of the journal, see {@link PetContract.PetChangeEntry} */
+    public static final String CHANGES_TABLE = "pet_changes";
+    public static final String HORIZON_TABLE = "pet_changes_horizon";
+    public static final String COLUMN_SEQ = "seq";
+    public static final String COLUMN_PET_ID = "pet_id";
+    public static final String COLUMN_OPERATION = "operation";
+    public static final String COLUMN_TIME = "time";
+
+    public static final int OPERATION_INSERT = 1;
+    public static final int OPERATION_UPDATE = 2;
+    public static final int OPERATION_DELETE = 3;
+    public static final int OPERATION_RESET = 4;
+
+    public static final String CREATE_SEARCH_TABLE = "CREATE VIRTUAL TABLE " + FTS_TABLE
+            + " USING fts4(" + COLUMN_NAME + ", " + COLUMN_BREED + ");";
+
+    public static final String TRIGGER_SEARCH_INSERT = "pets_fts_insert";
+    public static final String TRIGGER_SEARCH_UPDATE = "pets_fts_update";
+    public static final String TRIGGER_SEARCH_DELETE = "pets_fts_delete";
+
+    /** The breed name of the pet of the trigger, read back from the view of the pets */
+    private static final String SEARCH_BREED = "(SELECT " + COLUMN_BREED + " FROM " + PETS_VIEW
+            + " WHERE " + COLUMN_ID + " = new." + COLUMN_ID + ")";
+
+    public static final String CREATE_SEARCH_INSERT_TRIGGER = "CREATE TRIGGER "
+            + TRIGGER_SEARCH_INSERT + " AFTER INSERT ON " + PETS_TABLE + " BEGIN INSERT INTO "
+            + FTS_TABLE + " (docid, " + COLUMN_NAME + ", " + COLUMN_BREED + ") VALUES (new."
+            + COLUMN_ID + ", new." + COLUMN_NAME + ", " + SEARCH_BREED + "); END;";
+
+    public static final String CREATE_SEARCH_UPDATE_TRIGGER = "CREATE TRIGGER "
+            + TRIGGER_SEARCH_UPDATE + " AFTER UPDATE OF " + COLUMN_NAME + ", " + COLUMN_BREED_ID
+            + " ON " + PETS_TABLE + " BEGIN UPDATE " + FTS_TABLE + " SET " + COLUMN_NAME
+            + " = new." + COLUMN_NAME + ", " + COLUMN_BREED + " = " + SEARCH_BREED
+            + " WHERE docid = old." + COLUMN_ID + "; END;";
+
+    public static final String CREATE_SEARCH_DELETE_TRIGGER = "CREATE TRIGGER "
+            + TRIGGER_SEARCH_DELETE + " AFTER DELETE ON " + PETS_TABLE + " BEGIN DELETE FROM "
+            + FTS_TABLE + " WHERE docid = old." + COLUMN_ID + "; END;";
+
+    /**
+     * Tables of a search: the matching rows of the full-text index joined with their pets.
+     * CROSS JOIN keeps the index as the outer loop, so the MATCH runs once instead of per pet.
+     */
+    public static final String SEARCH_TABLES = FTS_TABLE + " CROSS JOIN " + PETS_VIEW + " ON "
+            + PETS_VIEW + "." + COLUMN_ID + " = " + FTS_TABLE + ".docid";
+
+    /**
+     * Order of the search results. FTS offsets() lists the matches column by column, so a
+     * list starting with column 0 means the name matched; those pets come first.
+     */
+    public static final String SEARCH_ORDER = "CASE WHEN offsets(" + FTS_TABLE
+            + ") LIKE '0 %' THEN 0 ELSE 1 END, " + PETS_VIEW + "." + COLUMN_NAME;
+
+    /**
+     * The journal. The sequence number is AUTOINCREMENT so it is never reused, even after the
+     * latest changes were compacted away.
+     */
+    public static final String CREATE_CHANGES_TABLE = "CREATE TABLE " + CHANGES_TABLE + " ("
+            + COLUMN_SEQ + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + COLUMN_PET_ID + " INTEGER NOT NULL, "
+            + COLUMN_OPERATION + " INTEGER NOT NULL, "
+            + COLUMN_TIME + " INTEGER NOT NULL DEFAULT 0);";
+
+    /** Compaction looks up the latest change of every pet */
+    public static final String CREATE_CHANGES_INDEX = "CREATE INDEX " + CHANGES_TABLE
+            + "_pet_idx ON " + CHANGES_TABLE + " (" + COLUMN_PET_ID + ", " + COLUMN_SEQ + ");";
+
+    /** The one-row table of the highest sequence number of the expired deletes */
+    public static final String CREATE_HORIZON_TABLE = "CREATE TABLE IF NOT EXISTS "
+            + HORIZON_TABLE + " (" + COLUMN_SEQ + " INTEGER NOT NULL);";
+
+    /** The row of the horizon, with nothing expired, unless it has one already */
+    public static final String INSERT_HORIZON = "INSERT INTO " + HORIZON_TABLE + " ("
+            + COLUMN_SEQ + ") SELECT 0 WHERE NOT EXISTS (SELECT 1 FROM " + HORIZON_TABLE + ");";
+
+    public static final String TRIGGER_CHANGES_INSERT = "pet_changes_insert";
+    public static final String TRIGGER_CHANGES_UPDATE = "pet_changes_update";
+    public static final String TRIGGER_CHANGES_DELETE = "pet_changes_delete";
+
+    public static final String CREATE_CHANGES_INSERT_TRIGGER = "CREATE TRIGGER "
+            + TRIGGER_CHANGES_INSERT + " AFTER INSERT ON " + PETS_TABLE + " BEGIN "
+            + logChange("new", OPERATION_INSERT) + " END;";
+
+    public static final String CREATE_CHANGES_DELETE_TRIGGER = "CREATE TRIGGER "
+            + TRIGGER_CHANGES_DELETE + " AFTER DELETE ON " + PETS_TABLE + " BEGIN "
+            + logChange("old", OPERATION_DELETE) + " END;";
+
+    /**
+     * Whether no delete after the sequence number ?1 has expired. The arguments are bound as
+     * text, hence the cast.
+     */
+    private static final String SQL_SINCE_KEPT = "CAST(?1 AS INTEGER) >= (SELECT " + COLUMN_SEQ
+            + " FROM " + HORIZON_TABLE + ")";
+
+    /** The sequence number a mirror goes on from after a reset, the latest one */
+    private static final String SQL_LATEST_SEQ = "MAX(IFNULL((SELECT MAX(" + COLUMN_SEQ
+            + ") FROM " + CHANGES_TABLE + "), 0), (SELECT " + COLUMN_SEQ + " FROM "
+            + HORIZON_TABLE + "))";
+
+    /**
+     * The changes after the sequence number ?1, at most ?2 of them, with the current values of
+     * the pets inserted or updated. Changes of pets deleted since are left out, their delete
+     * follows later on. Inserts and updates join the view of the pets and deletes are read on
+     * their own, both in sequence order, as a LEFT JOIN would build the whole view first.
+     * If deletes after ?1 have expired there is only a reset instead, read in the same
+     * statement so a compaction cannot slip in between.
+     */
+    public static final String SQL_CHANGES = "SELECT c." + COLUMN_SEQ + ", c." + COLUMN_PET_ID
+            + ", c." + COLUMN_OPERATION + ", p." + COLUMN_NAME + ", p." + COLUMN_BREED + ", p."
+            + COLUMN_GENDER + ", p." + COLUMN_WEIGHT + ", p." + COLUMN_PHOTO + " FROM "
+            + CHANGES_TABLE + " c JOIN " + PETS_VIEW + " p ON p." + COLUMN_ID + " = c."
+            + COLUMN_PET_ID + " WHERE c." + COLUMN_SEQ + " > ?1 AND c." + COLUMN_OPERATION
+            + " != " + OPERATION_DELETE + " AND " + SQL_SINCE_KEPT
+            + " UNION ALL SELECT " + COLUMN_SEQ + ", " + COLUMN_PET_ID + ", " + COLUMN_OPERATION
+            + ", NULL, NULL, NULL, NULL, NULL FROM " + CHANGES_TABLE + " WHERE " + COLUMN_SEQ
+            + " > ?1 AND " + COLUMN_OPERATION + " = " + OPERATION_DELETE + " AND "
+            + SQL_SINCE_KEPT
+            + " UNION ALL SELECT " + SQL_LATEST_SEQ + ", NULL, " + OPERATION_RESET
+            + ", NULL, NULL, NULL, NULL, NULL WHERE NOT " + SQL_SINCE_KEPT + " ORDER BY 1 LIMIT ?2";
+
+    /** Number of changes looked at per transaction by a compaction of the journal */
+    public static final int COMPACT_CHUNK_SIZE = 1000;
+
+    /**
+     * The end of the next chunk of the journal after the sequence number ?, 0 at its end.
+     * Compared with a column, a text argument takes the integer affinity of the column.
+     */
+    public static final String SQL_COMPACT_CHUNK_END = "SELECT IFNULL(MAX(" + COLUMN_SEQ
+            + "), 0) FROM (SELECT " + COLUMN_SEQ + " FROM " + CHANGES_TABLE + " WHERE "
+            + COLUMN_SEQ + " > ? ORDER BY " + COLUMN_SEQ + " LIMIT " + COMPACT_CHUNK_SIZE + ")";
+
+    /** Moves the horizon past the deletes in (?, ?] logged before the time ? */
+    public static final String SQL_EXPIRE_DELETES = "UPDATE " + HORIZON_TABLE + " SET "
+            + COLUMN_SEQ + " = MAX(" + COLUMN_SEQ + ", IFNULL((SELECT MAX(" + COLUMN_SEQ
+            + ") FROM " + CHANGES_TABLE + " WHERE " + COLUMN_SEQ + " > ? AND " + COLUMN_SEQ
+            + " <= ? AND " + COLUMN_OPERATION + " = " + OPERATION_DELETE + " AND "
+            + COLUMN_TIME + " < ?), 0))";
+
+    /**
+     * Drops the changes in (?, ?] that a later change of the same pet supersedes, and the
+     * deletes logged before the time ?.
+     */
+    public static final String SQL_COMPACT_CHANGES = "DELETE FROM " + CHANGES_TABLE + " WHERE "
+            + COLUMN_SEQ + " > ? AND " + COLUMN_SEQ + " <= ? AND (" + COLUMN_OPERATION + " = "
+            + OPERATION_DELETE + " AND " + COLUMN_TIME + " < ? OR EXISTS (SELECT 1 FROM "
+            + CHANGES_TABLE + " l WHERE l." + COLUMN_PET_ID + " = " + CHANGES_TABLE + "."
+            + COLUMN_PET_ID + " AND l." + COLUMN_SEQ + " > " + CHANGES_TABLE + "." + COLUMN_SEQ
+            + "))";
+
+    private PetSql() {}
+
+    /**
+     * The statements creating the full-text index of a new database, with its triggers.
+     */
+    public static String[] createSearchIndex() {
+        return new String[] { CREATE_SEARCH_TABLE, CREATE_SEARCH_INSERT_TRIGGER,
+                CREATE_SEARCH_UPDATE_TRIGGER, CREATE_SEARCH_DELETE_TRIGGER };
+    }
+
+    /**
+     * Turn search text into an FTS prefix query: every word becomes "word*" and all of them
+     * have to match. Characters with a meaning in the FTS query syntax are dropped.
+     * Returns null when no word is left.
+     */
+    public static String buildMatchExpression(String text) {
+        if( text == null ) {
+            return null;
+        }
+        StringBuilder match = new StringBuilder();
+        for( String word : text.split("[^\\p{L}\\p{N}]+") ) {
+            if( word.isEmpty() ) {
+                continue;
+            }
+            if( match.length() > 0 ) {
+                match.append(' ');
+            }
+            match.append(word).append('*');
+        }
+        return match.length() == 0 ? null : match.toString();
+    }
+
+    /**
+     * The trigger logging the updates of the pets. While an upgraded database still has pets
+     * with the old breed text, the update moving that text into {@link #COLUMN_BREED_ID} is
+     * not logged.
+     */
+    public static String createChangesUpdateTrigger(boolean legacyBreed) {
+        return "CREATE TRIGGER " + TRIGGER_CHANGES_UPDATE + " AFTER UPDATE OF " + COLUMN_NAME
+                + ", " + COLUMN_BREED_ID + ", " + COLUMN_GENDER + ", " + COLUMN_WEIGHT + ", "
+                + COLUMN_PHOTO + " ON " + PETS_TABLE
+                + (legacyBreed ? " WHEN old." + COLUMN_BREED + " IS NULL OR new." + COLUMN_BREED
+                        + " IS NOT NULL" : "")
+                + " BEGIN " + logChange("new", OPERATION_UPDATE) + " END;";
+    }
+
+    /**
+     * The statements creating the journal of a new database, with its horizon and triggers.
+     */
+    public static String[] createChangeLog() {
+        return new String[] { CREATE_CHANGES_TABLE, CREATE_CHANGES_INDEX, CREATE_HORIZON_TABLE,
+                INSERT_HORIZON, CREATE_CHANGES_INSERT_TRIGGER, createChangesUpdateTrigger(false),
+                CREATE_CHANGES_DELETE_TRIGGER };
+    }
+
+    /** Returns the statement dropping the given trigger, if it exists */
+    public static String dropTrigger(String trigger) {
+        return "DROP TRIGGER IF EXISTS " + trigger + ";";
+    }
+
+    private static String logChange(String row, int operation) {
+        return "INSERT INTO " + CHANGES_TABLE + " (" + COLUMN_PET_ID + ", " + COLUMN_OPERATION
+                + ", " + COLUMN_TIME + ") VALUES (" + row + "." + COLUMN_ID + ", " + operation
+                + ", CAST(strftime('%s', 'now') AS INTEGER));";
+    }
+}
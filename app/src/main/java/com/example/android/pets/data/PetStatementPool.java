@@ -0,0 +1,122 @@
+package com.example.android.pets.data;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+/**
+ * Compiled statements for the single-pet updates of {@link PetProvider}, so the common
+ * {@code UPDATE pets SET ... WHERE _id=?} shapes are compiled once instead of the SQL being
+ * rebuilt from the content values and compiled on every call.
+ *
+ * There is one statement per set of updated columns, created on first use. A statement is
+ * bound and executed under its own lock, so callers on different threads can share the pool.
+ * The lock is only taken inside a transaction, that is once the thread holds the primary
+ * connection: a thread waiting for the connection never holds a statement lock, and a thread
+ * in a write transaction never waits for one held by a thread that waits for the connection.
+ */
+final class PetStatementPool {
+
+    /**
+     * The columns an update can set through the pool, bit i of a shape stands for column i.
+     * The breed is set by id, see {@link PetBreeds}.
+     */
+    private static final String[] UPDATE_COLUMNS = { PetEntry.COLUMN_PET_NAME,
+            PetEntry.COLUMN_PET_BREED_ID, PetEntry.COLUMN_PET_GENDER, PetEntry.COLUMN_PET_WEIGHT };
+
+    private final SQLiteDatabase mDb;
+
+    /** Update statements indexed by shape, guarded by this */
+    private final SQLiteStatement[] mUpdateById = new SQLiteStatement[1 << UPDATE_COLUMNS.length];
+
+    PetStatementPool(SQLiteDatabase db) {
+        mDb = db;
+    }
+
+    /**
+     * Returns the shape of an update setting the given values, or -1 if a value is for a
+     * column the pool does not cover and the generic update has to be used.
+     */
+    static int shapeOf(ContentValues values) {
+        int shape = 0;
+        int known = 0;
+        for( int i = 0; i < UPDATE_COLUMNS.length; i++ ) {
+            if( values.containsKey(UPDATE_COLUMNS[i]) ) {
+                shape |= 1 << i;
+                known++;
+            }
+        }
+        return known == values.size() && shape != 0 ? shape : -1;
+    }
+
+    /**
+     * Update the pet with the given id with the already validated values, whose shape is
+     * given by {@link #shapeOf}. Returns the number of rows updated. Joins the transaction
+     * of the calling thread, if it is in one.
+     */
+    int updateById(long id, ContentValues values, int shape) {
+        mDb.beginTransactionNonExclusive();
+        try {
+            // compiling also needs the connection, so the pool lock is only taken in here too
+            int updated = executeUpdate(getUpdateStatement(shape), id, values, shape);
+            mDb.setTransactionSuccessful();
+            return updated;
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+
+    private static int executeUpdate(SQLiteStatement statement, long id, ContentValues values,
+                                     int shape) {
+        synchronized (statement) {
+            statement.clearBindings();
+            int index = 1;
+            for( int i = 0; i < UPDATE_COLUMNS.length; i++ ) {
+                if( (shape & (1 << i)) == 0 ) {
+                    continue;
+                }
+                Object value = values.get(UPDATE_COLUMNS[i]);
+                if( value == null ) {
+                    statement.bindNull(index);
+                } else if( value instanceof String ) {
+                    statement.bindString(index, (String) value);
+                } else if( value instanceof Float || value instanceof Double ) {
+                    statement.bindDouble(index, ((Number) value).doubleValue());
+                } else if( value instanceof Number ) {
+                    statement.bindLong(index, ((Number) value).longValue());
+                } else if( value instanceof Boolean ) {
+                    statement.bindLong(index, (Boolean) value ? 1 : 0);
+                } else {
+                    statement.bindString(index, value.toString());
+                }
+                index++;
+            }
+            statement.bindLong(index, id);
+            return statement.executeUpdateDelete();
+        }
+    }
+
+    private synchronized SQLiteStatement getUpdateStatement(int shape) {
+        SQLiteStatement statement = mUpdateById[shape];
+        if( statement == null ) {
+            StringBuilder sql = new StringBuilder("UPDATE ").append(PetEntry.TABLE_NAME)
+                    .append(" SET ");
+            boolean first = true;
+            for( int i = 0; i < UPDATE_COLUMNS.length; i++ ) {
+                if( (shape & (1 << i)) != 0 ) {
+                    if( !first ) {
+                        sql.append(", ");
+                    }
+                    sql.append(UPDATE_COLUMNS[i]).append("=?");
+                    first = false;
+                }
+            }
+            sql.append(" WHERE ").append(PetEntry._ID).append("=?");
+            statement = mDb.compileStatement(sql.toString());
+            mUpdateById[shape] = statement;
+        }
+        return statement;
+    }
+}
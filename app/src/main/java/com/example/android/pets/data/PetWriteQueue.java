@@ -0,0 +1,308 @@
+package com.example.android.pets.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Writes pets through {@link PetProvider} on a single background thread, so saving never
+ * blocks the UI thread.
+ *
+ * Writes queued while the writer is busy are applied together as one batch, which
+ * {@link PetProvider#applyBatch} runs in a single transaction. Updates of a pet that is still
+ * waiting in the queue are merged into the pending update instead of being queued again.
+ * Deletes run on their own, in queue order, so the provider can delete in chunks.
+ * Callbacks run on the main thread once the write is committed, in the order of the calls
+ * that queued them, also when an update was merged into an earlier one.
+ */
+public class PetWriteQueue {
+
+    private static final String LOG_TAG = PetWriteQueue.class.getSimpleName();
+
+    /**
+     * Receives the result of a queued write on the main thread.
+     */
+    public interface Callback {
+        /**
+         * Called once the write committed, with the URI of the pet, or with null when the
+         * write failed or the pet to update does not exist. A delete gets the URI it deleted
+         * from, or null when it failed.
+         */
+        void onWriteFinished(Uri petUri);
+    }
+
+    private static final int INSERT = 0;
+    private static final int UPDATE = 1;
+    private static final int DELETE = 2;
+
+    /** One queued insert, update or delete */
+    private static final class PendingWrite {
+        final int kind;
+        final Uri uri;
+        final ContentValues values;
+        /** The URI handed to the callbacks, set on the writer thread once it is applied */
+        Uri result;
+
+        PendingWrite(int kind, Uri uri, ContentValues values) {
+            this.kind = kind;
+            this.uri = uri;
+            this.values = values;
+        }
+
+        ContentProviderOperation toOperation() {
+            if( kind == INSERT ) {
+                return ContentProviderOperation.newInsert(uri).withValues(values).build();
+            }
+            return ContentProviderOperation.newUpdate(uri).withValues(values).build();
+        }
+    }
+
+    /** A callback and the write it waits for */
+    private static final class WaitingCallback {
+        final PendingWrite write;
+        final Callback callback;
+
+        WaitingCallback(PendingWrite write, Callback callback) {
+            this.write = write;
+            this.callback = callback;
+        }
+    }
+
+    private static PetWriteQueue sInstance;
+
+    private final ContentResolver mResolver;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Executor mExecutor;
+
+    /** Writes waiting for the writer thread, guarded by this */
+    private ArrayList<PendingWrite> mPending = new ArrayList<>();
+
+    /** Callbacks of {@link #mPending}, in the order they were queued, guarded by this */
+    private ArrayList<WaitingCallback> mCallbacks = new ArrayList<>();
+
+    /** Whether a drain of {@link #mPending} is already queued on the executor, guarded by this */
+    private boolean mDrainScheduled;
+
+    private final Runnable mDrain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * Returns the write queue of the process.
+     */
+    public static synchronized PetWriteQueue getInstance(Context context) {
+        if( sInstance == null ) {
+            sInstance = new PetWriteQueue(context.getApplicationContext().getContentResolver(),
+                    Executors.newSingleThreadExecutor());
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param executor runs the writes, one at a time
+     */
+    PetWriteQueue(ContentResolver resolver, Executor executor) {
+        mResolver = resolver;
+        mExecutor = executor;
+    }
+
+    /**
+     * Queue the insertion of a new pet into {@link PetEntry#CONTENT_URI}.
+     * @param values   the pet, validated by the provider
+     * @param callback notified with the URI of the new pet, may be null
+     */
+    public void insert(ContentValues values, Callback callback) {
+        enqueue(new PendingWrite(INSERT, PetEntry.CONTENT_URI, new ContentValues(values)),
+                callback);
+    }
+
+    /**
+     * Queue the deletion of every pet under the URI, after the writes queued before it.
+     * @param uri      {@link PetEntry#CONTENT_URI} to delete every pet, or the URI of one pet
+     * @param callback notified with the URI once the pets are deleted, may be null
+     */
+    public void delete(Uri uri, Callback callback) {
+        enqueue(new PendingWrite(DELETE, uri, null), callback);
+    }
+
+    private void enqueue(PendingWrite write, Callback callback) {
+        synchronized (this) {
+            mPending.add(write);
+            addCallback(write, callback);
+            scheduleDrain();
+        }
+    }
+
+    /** Have the callback wait for the write, after the callbacks queued so far. Hold this. */
+    private void addCallback(PendingWrite write, Callback callback) {
+        if( callback != null ) {
+            mCallbacks.add(new WaitingCallback(write, callback));
+        }
+    }
+
+    /**
+     * Queue an update of a single pet. If an update of the same pet is still waiting, the
+     * values are merged into it, later values winning. The callback still runs after those
+     * of the writes queued before this call.
+     * @param petUri   the URI of the pet, {@link PetEntry#CONTENT_URI} with the id appended
+     * @param values   the columns to change
+     * @param callback notified with the URI of the pet, may be null
+     */
+    public void update(Uri petUri, ContentValues values, Callback callback) {
+        synchronized (this) {
+            PendingWrite write = null;
+            // An update waiting before a delete must stay before it
+            for( int i = mPending.size() - 1; i >= 0 && mPending.get(i).kind != DELETE; i-- ) {
+                PendingWrite pending = mPending.get(i);
+                if( pending.kind == UPDATE && pending.uri.equals(petUri) ) {
+                    write = pending;
+                    break;
+                }
+            }
+            if( write == null ) {
+                write = new PendingWrite(UPDATE, petUri, new ContentValues(values));
+                mPending.add(write);
+            } else {
+                write.values.putAll(values);
+            }
+            addCallback(write, callback);
+            scheduleDrain();
+        }
+    }
+
+    /** Queue a drain on the writer thread unless one is already waiting. Hold this. */
+    private void scheduleDrain() {
+        if( !mDrainScheduled ) {
+            mDrainScheduled = true;
+            mExecutor.execute(mDrain);
+        }
+    }
+
+    /**
+     * Apply everything queued so far, on the writer thread.
+     */
+    private void drain() {
+        ArrayList<PendingWrite> writes;
+        ArrayList<WaitingCallback> callbacks;
+        synchronized (this) {
+            writes = mPending;
+            callbacks = mCallbacks;
+            mPending = new ArrayList<>();
+            mCallbacks = new ArrayList<>();
+            mDrainScheduled = false;
+        }
+        if( writes.isEmpty() ) {
+            return;
+        }
+
+        int start = 0;
+        while( start < writes.size() ) {
+            if( writes.get(start).kind == DELETE ) {
+                // Never inside a batch: its transaction would hold the write lock for the
+                // whole delete instead of one chunk
+                PendingWrite delete = writes.get(start);
+                delete.result = applyOne(delete);
+                start++;
+                continue;
+            }
+            int end = start + 1;
+            while( end < writes.size() && writes.get(end).kind != DELETE ) {
+                end++;
+            }
+            if( end - start == 1 || !applyAsBatch(writes, start, end) ) {
+                // One write, or the batch was rolled back because of one bad pet:
+                // apply them one by one so the valid ones are still saved.
+                for( int i = start; i < end; i++ ) {
+                    PendingWrite write = writes.get(i);
+                    write.result = applyOne(write);
+                }
+            }
+            start = end;
+        }
+        deliver(callbacks);
+    }
+
+    /**
+     * Apply the writes from start to end in one batch and set their results. Returns false
+     * if the batch failed and nothing was written.
+     */
+    private boolean applyAsBatch(ArrayList<PendingWrite> writes, int start, int end) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(end - start);
+        for( int i = start; i < end; i++ ) {
+            operations.add(writes.get(i).toOperation());
+        }
+        ContentProviderResult[] batchResults;
+        try {
+            batchResults = mResolver.applyBatch(PetContract.CONTENT_AUTHORITY, operations);
+        } catch (RemoteException | OperationApplicationException | RuntimeException e) {
+            // RuntimeException also covers an SQLiteException, e.g. the disk is full
+            Log.w(LOG_TAG, "Batch of " + operations.size() + " pet writes failed", e);
+            return false;
+        }
+        for( int i = start; i < end; i++ ) {
+            PendingWrite write = writes.get(i);
+            ContentProviderResult result = batchResults[i - start];
+            if( write.kind == INSERT ) {
+                write.result = result.uri;
+            } else {
+                write.result = result.count != null && result.count > 0 ? write.uri : null;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Apply a single write. Returns the URI of the pet, or null if it failed.
+     */
+    private Uri applyOne(PendingWrite write) {
+        try {
+            if( write.kind == INSERT ) {
+                return mResolver.insert(write.uri, write.values);
+            }
+            if( write.kind == DELETE ) {
+                int deleted = mResolver.delete(write.uri, null, null);
+                Log.v(LOG_TAG, deleted + " pets deleted from " + write.uri);
+                return write.uri;
+            }
+            return mResolver.update(write.uri, write.values, null, null) > 0 ? write.uri : null;
+        } catch (RuntimeException e) {
+            // an invalid pet, or an SQLiteException; the callback still hears of it
+            Log.e(LOG_TAG, "Failed to write pet " + write.uri, e);
+            return null;
+        }
+    }
+
+    /**
+     * Hand the results to the callbacks on the main thread.
+     */
+    private void deliver(final ArrayList<WaitingCallback> callbacks) {
+        if( callbacks.isEmpty() ) {
+            return;
+        }
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for( WaitingCallback waiting : callbacks ) {
+                    waiting.callback.onWriteFinished(waiting.write.result);
+                }
+            }
+        });
+    }
+}
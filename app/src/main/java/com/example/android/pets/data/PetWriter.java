@@ -0,0 +1,146 @@
+package com.example.android.pets.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.net.Uri;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+/**
+ * Inserts pets given as plain fields, for callers in the app process that ingest many pets.
+ *
+ * Unlike an insert through the content resolver no {@link android.content.ContentValues}
+ * is built, nothing is boxed and no SQL is generated per pet: the fields are checked as
+ * primitives and bound by index to one compiled insert statement, kept for the life of the
+ * process. {@link PetProvider} inserts through the same statement.
+ */
+public final class PetWriter {
+
+    /** Insert statement, bound by column index */
+    private static final String SQL_INSERT_PET = "INSERT INTO " + PetEntry.TABLE_NAME + " ("
+            + PetEntry.COLUMN_PET_NAME + ", "
+            + PetEntry.COLUMN_PET_BREED_ID + ", "
+            + PetEntry.COLUMN_PET_GENDER + ", "
+            + PetEntry.COLUMN_PET_WEIGHT + ") VALUES (?, ?, ?, ?)";
+
+    /**
+     * Told about every pet inserted through {@link #insert}, once it is committed.
+     */
+    interface InsertListener {
+        void onPetInserted(Uri petUri);
+    }
+
+    private static PetWriter sInstance;
+
+    private final PetDbHelper mDbHelper;
+    private final PetBreeds mBreeds;
+    private final ContentResolver mResolver;
+
+    /** The compiled insert, created on first use, guarded by this */
+    private SQLiteStatement mInsert;
+
+    /** Set by {@link PetProvider} so the inserts reach its caches, null until then */
+    private volatile InsertListener mListener;
+
+    /**
+     * Returns the writer of the process.
+     */
+    public static synchronized PetWriter getInstance(Context context) {
+        if( sInstance == null ) {
+            Context appContext = context.getApplicationContext();
+            sInstance = new PetWriter(PetDbHelper.getInstance(appContext),
+                    PetBreeds.getInstance(appContext), appContext.getContentResolver());
+        }
+        return sInstance;
+    }
+
+    private PetWriter(PetDbHelper dbHelper, PetBreeds breeds, ContentResolver resolver) {
+        mDbHelper = dbHelper;
+        mBreeds = breeds;
+        mResolver = resolver;
+    }
+
+    void setInsertListener(InsertListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Insert a pet in its own transaction and notify the observers of
+     * {@link PetEntry#CONTENT_URI}.
+     * @param name   name of the pet, required
+     * @param breed  breed of the pet, may be null
+     * @param gender one of the GENDER_ constants of {@link PetEntry}
+     * @param weight weight of the pet, not negative
+     * @return the id of the new pet, or -1 if it could not be inserted
+     * @throws IllegalArgumentException if a field is invalid
+     */
+    public long insert(String name, String breed, int gender, int weight) {
+        String error = checkPet(name, gender, weight);
+        if( error != null ) {
+            throw new IllegalArgumentException(error);
+        }
+        long breedId = mBreeds.resolve(breed);
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        long id;
+        db.beginTransactionNonExclusive();
+        try {
+            id = insertRow(name, breedId, gender, weight);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if( id != -1 ) {
+            Uri petUri = ContentUris.withAppendedId(PetEntry.CONTENT_URI, id);
+            InsertListener listener = mListener;
+            if( listener != null ) {
+                listener.onPetInserted(petUri);
+            } else {
+                mResolver.notifyChange(petUri, null);
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Returns why the fields are not a valid pet, or null if they are.
+     */
+    static String checkPet(String name, int gender, int weight) {
+        if( name == null ) {
+            return "Pet requires a name";
+        }
+        if( gender != PetEntry.GENDER_UNKNOWN && gender != PetEntry.GENDER_MALE
+                && gender != PetEntry.GENDER_FEMALE ) {
+            return "Pet requires valid gender";
+        }
+        if( weight < 0 ) {
+            return "Pet must have a positive weight";
+        }
+        return null;
+    }
+
+    /**
+     * Insert already validated fields, without notifying anyone. Returns the new id, or -1.
+     * The breed is given by its id from {@link PetBreeds#resolve}.
+     *
+     * Must be called inside a transaction of the writable database: only the thread holding
+     * the write connection can then hold the statement, and no thread ever waits for the
+     * connection while holding it.
+     */
+    synchronized long insertRow(String name, long breedId, int gender, int weight) {
+        if( mInsert == null ) {
+            mInsert = mDbHelper.getWritableDatabase().compileStatement(SQL_INSERT_PET);
+        }
+        mInsert.bindString(1, name);
+        if( breedId == PetBreeds.NO_BREED ) {
+            mInsert.bindNull(2);
+        } else {
+            mInsert.bindLong(2, breedId);
+        }
+        mInsert.bindLong(3, gender);
+        mInsert.bindLong(4, weight);
+        return mInsert.executeInsert();
+    }
+}
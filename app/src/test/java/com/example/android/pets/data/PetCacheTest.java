@@ -0,0 +1,133 @@
+package com.example.android.pets.data;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a lookup of {@link PetCache} racing with a write cannot leave the old pet cached.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 25)
+public class PetCacheTest {
+
+    /** Pets written and looked up by the race, few so that lookups race with writes */
+    private static final int PETS = 8;
+
+    /** Committed writes of the race, and the threads looking the pets up meanwhile */
+    private static final int WRITES = 200000;
+    private static final int READERS = 3;
+
+    @Test
+    public void putAfterInvalidationIsDropped() {
+        PetCache cache = new PetCache(4);
+        long generation = cache.getGeneration();
+        cache.invalidate(1);
+        cache.put(pet(1, 10), generation);
+        assertNull(cache.get(1));
+
+        Pet pet = pet(1, 11);
+        cache.put(pet, cache.getGeneration());
+        assertSame(pet, cache.get(1));
+    }
+
+    @Test
+    public void putAfterInvalidateAllIsDropped() {
+        PetCache cache = new PetCache(4);
+        cache.put(pet(2, 5), cache.getGeneration());
+        long generation = cache.getGeneration();
+        cache.invalidateAll();
+        cache.put(pet(1, 10), generation);
+        assertNull(cache.get(1));
+        assertNull(cache.get(2));
+    }
+
+    /**
+     * Readers look pets up through the cache, reading a miss from a table the way
+     * PetProvider.queryPet does, while a writer increments the weights and invalidates each pet
+     * after the write, like the provider does after a commit. No lookup may return a weight
+     * older than the last write invalidated before it started, and once the writes stop the
+     * cache has to hold the weights of the table.
+     */
+    @Test
+    public void racingLookupsNeverCacheStalePets() throws Exception {
+        final PetCache cache = new PetCache(PETS / 2);
+        // the table, and the weight of every pet as of its last invalidation, indexed by id
+        final AtomicLongArray table = new AtomicLongArray(PETS + 1);
+        final AtomicLongArray committed = new AtomicLongArray(PETS + 1);
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicLong stale = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+
+        Thread[] readers = new Thread[READERS];
+        for( int i = 0; i < READERS; i++ ) {
+            final Random random = new Random(i);
+            readers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while( !done.get() ) {
+                        int id = 1 + random.nextInt(PETS);
+                        long floor = committed.get(id);
+                        Pet pet = cache.get(id);
+                        if( pet == null ) {
+                            long generation = cache.getGeneration();
+                            pet = pet(id, (int) table.get(id));
+                            // give the writer a chance to slip in before the put
+                            Thread.yield();
+                            cache.put(pet, generation);
+                            if( cache.getGeneration() != generation ) {
+                                rejected.incrementAndGet();
+                            }
+                        }
+                        if( pet.getWeight() < floor ) {
+                            stale.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            readers[i].start();
+        }
+
+        Random random = new Random(9);
+        try {
+            for( int i = 0; i < WRITES; i++ ) {
+                int id = 1 + random.nextInt(PETS);
+                long weight = table.incrementAndGet(id);
+                cache.invalidate(id);
+                committed.set(id, weight);
+            }
+        } finally {
+            done.set(true);
+            for( Thread reader : readers ) {
+                reader.join();
+            }
+        }
+
+        assertEquals("lookups returned a stale weight", 0, stale.get());
+        for( int id = 1; id <= PETS; id++ ) {
+            Pet pet = cache.get(id);
+            if( pet != null ) {
+                assertEquals("weight of cached pet " + id, table.get(id), pet.getWeight());
+            }
+        }
+        assertTrue("no lookup raced with a write, the generation went untested",
+                rejected.get() > 0);
+    }
+
+    private static Pet pet(long id, int weight) {
+        return new Pet(id, "Toto", "Terrier", PetEntry.GENDER_MALE, weight);
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.android.pets.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+
+import com.example.android.pets.data.PetContract.PetBreedEntry;
+import com.example.android.pets.data.PetContract.PetChangeEntry;
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the row work of {@link PetMigrations} resumes from its last checkpoint after
+ * being interrupted in the middle of a chunk, and ends like a migration that never stopped.
+ *
+ * The number of pets defaults to a few chunks; set {@code -Dpets.migrationPets=1000000} to
+ * time the upgrade of a large database.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 25)
+public class PetMigrationsTest {
+
+    /** Pets of the version 1 database, at least three chunks so the second is not the last */
+    private static final int PETS = Integer.getInteger("pets.migrationPets", 5000);
+
+    /** The migrations with row work, each interrupted in turn */
+    private static final int[] ROW_WORK_VERSIONS = { 3, 4, 5 };
+
+    private static final String[] NAMES = { "Toto", "Binx", "Garfield", "Rex", "Bella" };
+    /** Breeds of version 1, free text: padded, differently cased, empty or missing */
+    private static final String[] BREEDS = { "Terrier", " Tabby ", "terrier", "", null,
+            "Beagle" };
+
+    private static final String PROGRESS_TABLE = "migration_progress";
+    private static final String TRIGGER_INTERRUPT = "interrupt_migration";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private SQLiteDatabase mResumed;
+    private SQLiteDatabase mUninterrupted;
+
+    @Before
+    public void setUp() throws Exception {
+        mResumed = createVersion1(mFolder.newFile("resumed.db").getPath());
+        mUninterrupted = createVersion1(mFolder.newFile("uninterrupted.db").getPath());
+    }
+
+    @After
+    public void tearDown() {
+        mResumed.close();
+        mUninterrupted.close();
+    }
+
+    @Test
+    public void interruptedMigrationResumesWithoutDuplicates() {
+        long start = System.nanoTime();
+        upgrade(mUninterrupted);
+        long upgraded = System.nanoTime();
+        PetMigrations.runPendingWork(mUninterrupted, null);
+        long migrated = System.nanoTime();
+        System.out.println("Migrated " + PETS + " pets from version 1: upgrade "
+                + (upgraded - start) / 1000000 + " ms, rows " + (migrated - upgraded) / 1000000
+                + " ms");
+
+        upgrade(mResumed);
+        for( int version : ROW_WORK_VERSIONS ) {
+            interruptSecondChunk(mResumed, version);
+            try {
+                PetMigrations.runPendingWork(mResumed, null);
+                fail("The migration to version " + version + " was not interrupted");
+            } catch (SQLiteException expected) {
+            }
+            mResumed.execSQL("DROP TRIGGER " + TRIGGER_INTERRUPT + ";");
+
+            // Only the first chunk is committed, the rows of the second rolled back with it
+            Cursor progress = mResumed.rawQuery("SELECT last_id, end_id FROM " + PROGRESS_TABLE
+                    + " WHERE version = ?", new String[] { String.valueOf(version) });
+            try {
+                assertTrue(progress.moveToFirst());
+                assertTrue(progress.getLong(0) > 0);
+                assertTrue(progress.getLong(0) < progress.getLong(1));
+            } finally {
+                progress.close();
+            }
+        }
+        PetMigrations.runPendingWork(mResumed, null);
+
+        assertEquals(0, queryLong(mResumed, "SELECT COUNT(*) FROM " + PROGRESS_TABLE));
+        assertEquals(PETS, queryLong(mResumed, "SELECT COUNT(DISTINCT docid) FROM "
+                + PetEntry.FTS_TABLE_NAME));
+        assertEquals(PETS, queryLong(mResumed, "SELECT COUNT(*) FROM "
+                + PetEntry.FTS_TABLE_NAME));
+        assertEquals(PETS, queryLong(mResumed, "SELECT COUNT(*) FROM "
+                + PetChangeEntry.TABLE_NAME + " WHERE " + PetChangeEntry.COLUMN_OPERATION
+                + " = " + PetChangeEntry.OPERATION_INSERT));
+        assertEquals(0, queryLong(mResumed, "SELECT COUNT(*) FROM " + PetEntry.TABLE_NAME
+                + " WHERE " + PetEntry.COLUMN_PET_BREED + " IS NOT NULL"));
+
+        assertSameRows("SELECT " + PetEntry._ID + ", " + PetEntry.COLUMN_PET_NAME + ", "
+                + PetEntry.COLUMN_PET_BREED + ", " + PetEntry.COLUMN_PET_GENDER + ", "
+                + PetEntry.COLUMN_PET_WEIGHT + " FROM " + PetEntry.VIEW_NAME + " ORDER BY "
+                + PetEntry._ID);
+        assertSameRows("SELECT docid, " + PetEntry.COLUMN_PET_NAME + ", "
+                + PetEntry.COLUMN_PET_BREED + " FROM " + PetEntry.FTS_TABLE_NAME
+                + " ORDER BY docid");
+        assertSameRows("SELECT " + PetChangeEntry.COLUMN_PET_ID + ", "
+                + PetChangeEntry.COLUMN_OPERATION + ", COUNT(*) FROM "
+                + PetChangeEntry.TABLE_NAME + " GROUP BY " + PetChangeEntry.COLUMN_PET_ID + ", "
+                + PetChangeEntry.COLUMN_OPERATION + " ORDER BY " + PetChangeEntry.COLUMN_PET_ID
+                + ", " + PetChangeEntry.COLUMN_OPERATION);
+        assertSameRows("SELECT " + PetBreedEntry._ID + ", " + PetBreedEntry.COLUMN_BREED_NAME
+                + " FROM " + PetBreedEntry.TABLE_NAME + " ORDER BY " + PetBreedEntry._ID);
+    }
+
+    /** Create the pets table of version 1 in a new database and fill it */
+    private static SQLiteDatabase createVersion1(String path) {
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(path, null);
+        db.execSQL("CREATE TABLE " + PetEntry.TABLE_NAME + " (" + PetEntry._ID
+                + " INTEGER PRIMARY KEY AUTOINCREMENT, " + PetEntry.COLUMN_PET_NAME
+                + " TEXT NOT NULL, " + PetEntry.COLUMN_PET_BREED + " TEXT, "
+                + PetEntry.COLUMN_PET_GENDER + " INTEGER NOT NULL, "
+                + PetEntry.COLUMN_PET_WEIGHT + " INTEGER NOT NULL DEFAULT 0);");
+        db.beginTransaction();
+        try {
+            for( int i = 0; i < PETS; i++ ) {
+                db.execSQL("INSERT INTO " + PetEntry.TABLE_NAME + " ("
+                        + PetEntry.COLUMN_PET_NAME + ", " + PetEntry.COLUMN_PET_BREED + ", "
+                        + PetEntry.COLUMN_PET_GENDER + ", " + PetEntry.COLUMN_PET_WEIGHT
+                        + ") VALUES (?, ?, ?, ?);", new Object[] { NAMES[i % NAMES.length] + i,
+                        BREEDS[i % BREEDS.length], i % 3, i % 60 });
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        db.setVersion(1);
+        return db;
+    }
+
+    /** The schema part of the upgrade, in its transaction like SQLiteOpenHelper runs it */
+    private static void upgrade(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            PetMigrations.upgrade(db, 1, 8);
+            db.setVersion(8);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Abort the transaction of the second chunk of the migration, after its rows were
+     * migrated and before its progress is recorded.
+     */
+    private static void interruptSecondChunk(SQLiteDatabase db, int version) {
+        db.execSQL("CREATE TEMP TRIGGER " + TRIGGER_INTERRUPT + " BEFORE UPDATE ON "
+                + PROGRESS_TABLE + " WHEN new.version = " + version + " AND old.last_id > 0"
+                + " BEGIN SELECT RAISE(ABORT, 'interrupted'); END;");
+    }
+
+    private void assertSameRows(String sql) {
+        assertEquals(sql, readRows(mUninterrupted, sql), readRows(mResumed, sql));
+    }
+
+    private static List<String> readRows(SQLiteDatabase db, String sql) {
+        List<String> rows = new ArrayList<>();
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            StringBuilder row = new StringBuilder();
+            while( cursor.moveToNext() ) {
+                row.setLength(0);
+                for( int i = 0; i < cursor.getColumnCount(); i++ ) {
+                    row.append(cursor.getString(i)).append('|');
+                }
+                rows.add(row.toString());
+            }
+        } finally {
+            cursor.close();
+        }
+        return rows;
+    }
+
+    private static long queryLong(SQLiteDatabase db, String sql) {
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.android.pets.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.pets.data.PetContract.PetChangeEntry;
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks that {@link PetProvider#applyBatch} is atomic and notifies only after the commit.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 25)
+public class PetProviderBatchTest {
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = TestPets.setUp();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestPets.tearDown();
+    }
+
+    @Test
+    public void failingOperationRollsBackTheWholeBatch() throws Exception {
+        Uri rex = mResolver.insert(PetEntry.CONTENT_URI, TestPets.pet("Rex", "Beagle", 10));
+        long seq = latestSeq();
+        shadowOf(mResolver).getNotifiedUris().clear();
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(PetEntry.CONTENT_URI)
+                .withValues(TestPets.pet("Toto", "Terrier", 7)).build());
+        operations.add(ContentProviderOperation.newUpdate(rex)
+                .withValue(PetEntry.COLUMN_PET_WEIGHT, 12).build());
+        operations.add(ContentProviderOperation.newDelete(rex).build());
+        // no name, rejected by the provider
+        operations.add(ContentProviderOperation.newInsert(PetEntry.CONTENT_URI)
+                .withValues(TestPets.pet(null, "Tabby", 3)).build());
+        try {
+            mResolver.applyBatch(PetContract.CONTENT_AUTHORITY, operations);
+            fail("The batch with an invalid pet was applied");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        Cursor pets = mResolver.query(PetEntry.CONTENT_URI, PetEntry.PROJECTION_ALL, null, null,
+                null);
+        try {
+            assertEquals(1, pets.getCount());
+            pets.moveToFirst();
+            Pet pet = new PetCursorMapper(pets).read();
+            assertEquals(ContentUris.parseId(rex), pet.getId());
+            assertEquals(10, pet.getWeight());
+        } finally {
+            pets.close();
+        }
+        assertEquals("journal of the rolled back batch", seq, latestSeq());
+        assertTrue("notified " + shadowOf(mResolver).getNotifiedUris().size() + " URIs",
+                shadowOf(mResolver).getNotifiedUris().isEmpty());
+    }
+
+    @Test
+    public void notificationsWaitForTheCommit() throws Exception {
+        final boolean[] inTransaction = new boolean[1];
+        final int[] changes = new int[1];
+        mResolver.registerContentObserver(PetEntry.CONTENT_URI, true, new ContentObserver(null) {
+            @Override
+            public void onChange(boolean selfChange) {
+                changes[0]++;
+                inTransaction[0] |= PetDbHelper.getInstance(RuntimeEnvironment.application)
+                        .getWritableDatabase().inTransaction();
+            }
+        });
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(PetEntry.CONTENT_URI)
+                .withValues(TestPets.pet("Toto", "Terrier", 7)).build());
+        operations.add(ContentProviderOperation.newInsert(PetEntry.CONTENT_URI)
+                .withValues(TestPets.pet("Rex", "Beagle", 10)).build());
+        operations.add(ContentProviderOperation.newUpdate(PetEntry.CONTENT_URI)
+                .withSelection(PetEntry._ID + "=?", new String[1])
+                .withSelectionBackReference(0, 0)
+                .withValue(PetEntry.COLUMN_PET_WEIGHT, 8).build());
+        ContentProviderResult[] results = mResolver.applyBatch(PetContract.CONTENT_AUTHORITY,
+                operations);
+
+        assertEquals(3, results.length);
+        assertEquals(Integer.valueOf(1), results[2].count);
+        assertFalse("an observer was notified inside the transaction", inTransaction[0]);
+        assertEquals("notifications of one batch", 1, changes[0]);
+        Cursor toto = mResolver.query(results[0].uri, PetEntry.PROJECTION_ALL, null, null, null);
+        try {
+            assertTrue(toto.moveToFirst());
+            assertEquals(8, new PetCursorMapper(toto).read().getWeight());
+        } finally {
+            toto.close();
+        }
+    }
+
+    /** Returns the sequence number of the latest change of the journal */
+    private long latestSeq() {
+        Cursor changes = mResolver.query(PetChangeEntry.buildChangesUri(0,
+                PetChangeEntry.MAX_PAGE_SIZE), null, null, null,
+                null);
+        try {
+            return changes.moveToLast() ? changes.getLong(0) : 0;
+        } finally {
+            changes.close();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.android.pets.data;
+
+import android.content.ContentResolver;
+import android.os.Bundle;
+
+import com.example.android.pets.data.PetContract.PetCallEntry;
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that {@link PetCallEntry#METHOD_COUNT_WHERE} only runs the selections of the
+ * contract.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 25)
+public class PetProviderCallTest {
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = TestPets.setUp();
+        mResolver.insert(PetEntry.CONTENT_URI, TestPets.pet("Rex", "Beagle", 10));
+        mResolver.insert(PetEntry.CONTENT_URI, TestPets.pet("Toto", "Terrier", 7));
+        mResolver.insert(PetEntry.CONTENT_URI, TestPets.pet("Binx", "Beagle", 7));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestPets.tearDown();
+    }
+
+    @Test
+    public void countsTheContractSelections() {
+        assertEquals(3, count(null));
+        assertEquals(2, count(PetEntry.SELECTION_WEIGHT_EQUALS, "7"));
+        assertEquals(2, count(PetEntry.SELECTION_BREED_EQUALS, "Beagle"));
+    }
+
+    @Test
+    public void rejectsOtherSelections() {
+        assertRejected(PetEntry.COLUMN_PET_NAME + " IN (SELECT name FROM sqlite_master)");
+        assertRejected(PetEntry.SELECTION_WEIGHT_EQUALS + " OR 1=1", "7");
+        // a contract selection without its argument
+        assertRejected(PetEntry.SELECTION_WEIGHT_EQUALS);
+    }
+
+    private long count(String selection, String... selectionArgs) {
+        Bundle extras = new Bundle();
+        extras.putStringArray(PetCallEntry.KEY_SELECTION_ARGS, selectionArgs);
+        Bundle result = mResolver.call(PetEntry.CONTENT_URI, PetCallEntry.METHOD_COUNT_WHERE,
+                selection, extras);
+        return result.getLong(PetCallEntry.KEY_COUNT);
+    }
+
+    private void assertRejected(String selection, String... selectionArgs) {
+        try {
+            count(selection, selectionArgs);
+            fail("Counted the pets matching " + selection);
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
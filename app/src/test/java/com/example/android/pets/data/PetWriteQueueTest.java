@@ -0,0 +1,147 @@
+package com.example.android.pets.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that {@link PetWriteQueue} merges pending updates of a pet and still calls back in
+ * the order of the original writes.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 25)
+public class PetWriteQueueTest {
+
+    /** Holds the drains of the queue until {@link #runAll} */
+    private static final class ManualExecutor implements Executor {
+        final ArrayList<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            while( !tasks.isEmpty() ) {
+                tasks.remove(0).run();
+            }
+            ShadowLooper.idleMainLooper();
+        }
+    }
+
+    /** Records the name of every callback it creates, in the order they are called */
+    private static final class CallbackLog {
+        final List<String> names = new ArrayList<>();
+        final List<Uri> uris = new ArrayList<>();
+
+        PetWriteQueue.Callback callback(final String name) {
+            return new PetWriteQueue.Callback() {
+                @Override
+                public void onWriteFinished(Uri petUri) {
+                    names.add(name);
+                    uris.add(petUri);
+                }
+            };
+        }
+    }
+
+    private ContentResolver mResolver;
+    private ManualExecutor mExecutor;
+    private PetWriteQueue mQueue;
+    private Uri mRex;
+
+    @Before
+    public void setUp() {
+        mResolver = TestPets.setUp();
+        mExecutor = new ManualExecutor();
+        mQueue = new PetWriteQueue(mResolver, mExecutor);
+        mRex = mResolver.insert(PetEntry.CONTENT_URI, TestPets.pet("Rex", "Beagle", 10));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestPets.tearDown();
+    }
+
+    @Test
+    public void mergedUpdateCallsBackInTheOrderOfTheWrites() {
+        CallbackLog log = new CallbackLog();
+        mQueue.update(mRex, weight(11), log.callback("weight"));
+        mQueue.insert(TestPets.pet("Toto", "Terrier", 7), log.callback("insert"));
+        ContentValues name = new ContentValues();
+        name.put(PetEntry.COLUMN_PET_NAME, "Rexy");
+        mQueue.update(mRex, name, log.callback("name"));
+        // one more edit of the weight, merged too, later values win
+        mQueue.update(mRex, weight(12), log.callback("weight again"));
+        mExecutor.runAll();
+
+        assertEquals(Arrays.asList("weight", "insert", "name", "weight again"), log.names);
+        assertEquals(mRex, log.uris.get(0));
+        assertEquals(mRex, log.uris.get(3));
+        Pet rex = readPet(mRex);
+        assertEquals("Rexy", rex.getName());
+        assertEquals(12, rex.getWeight());
+        assertEquals(2, count());
+    }
+
+    @Test
+    public void updateAfterDeleteIsNotMergedBeforeIt() {
+        CallbackLog log = new CallbackLog();
+        mQueue.update(mRex, weight(11), log.callback("update"));
+        mQueue.delete(mRex, log.callback("delete"));
+        mQueue.update(mRex, weight(12), log.callback("update after delete"));
+        mExecutor.runAll();
+
+        assertEquals(Arrays.asList("update", "delete", "update after delete"), log.names);
+        assertEquals(mRex, log.uris.get(0));
+        assertEquals(mRex, log.uris.get(1));
+        // the pet is gone by the time of the last update
+        assertNull(log.uris.get(2));
+        assertEquals(0, count());
+    }
+
+    private static ContentValues weight(int weight) {
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_WEIGHT, weight);
+        return values;
+    }
+
+    private Pet readPet(Uri uri) {
+        Cursor cursor = mResolver.query(uri, PetEntry.PROJECTION_ALL, null, null, null);
+        try {
+            cursor.moveToFirst();
+            return new PetCursorMapper(cursor).read();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int count() {
+        Cursor cursor = mResolver.query(PetEntry.CONTENT_URI, PetEntry.PROJECTION_ID_NAME, null,
+                null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.android.pets.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.pm.ProviderInfo;
+
+import com.example.android.pets.data.PetContract.PetEntry;
+
+import org.robolectric.Robolectric;
+import org.robolectric.RuntimeEnvironment;
+
+import java.lang.reflect.Field;
+
+/**
+ * Sets up {@link PetProvider} on a new database for a Robolectric test. The singletons of the
+ * data layer would outlive the test and its database, so {@link #tearDown} drops them.
+ */
+final class TestPets {
+
+    /** The classes holding a process-wide instance in a static sInstance field */
+    private static final Class<?>[] SINGLETONS = { PetWriteQueue.class, PetSnapshot.class,
+            PetWriter.class, PetBreeds.class, PetDbHelper.class };
+
+    private TestPets() {}
+
+    /**
+     * Create the provider and return the resolver reaching it.
+     */
+    static ContentResolver setUp() {
+        ProviderInfo info = new ProviderInfo();
+        info.authority = PetContract.CONTENT_AUTHORITY;
+        Robolectric.buildContentProvider(PetProvider.class).create(info);
+        return RuntimeEnvironment.application.getContentResolver();
+    }
+
+    /**
+     * Close the database and forget the singletons, so the next test starts afresh.
+     */
+    static void tearDown() throws Exception {
+        PetCatalogPrefetch.invalidate();
+        PetDbHelper.getInstance(RuntimeEnvironment.application).close();
+        for( Class<?> singleton : SINGLETONS ) {
+            Field instance = singleton.getDeclaredField("sInstance");
+            instance.setAccessible(true);
+            instance.set(null, null);
+        }
+    }
+
+    static ContentValues pet(String name, String breed, int weight) {
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_NAME, name);
+        values.put(PetEntry.COLUMN_PET_BREED, breed);
+        values.put(PetEntry.COLUMN_PET_GENDER, PetEntry.GENDER_MALE);
+        values.put(PetEntry.COLUMN_PET_WEIGHT, weight);
+        return values;
+    }
+}
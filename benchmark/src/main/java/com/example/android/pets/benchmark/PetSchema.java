@@ -0,0 +1,64 @@
+package com.example.android.pets.benchmark;
+
+import com.example.android.pets.data.PetSql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * The schema of shelter.db, as created by PetDbHelper.onCreate in the app. The full-text index
+ * and the journal of changes come from {@link PetSql}, shared with the app; keep the other
+ * statements in step with PetDbHelper when its schema changes.
+ */
+final class PetSchema {
+
+    static final String TABLE_NAME = "pets";
+
+    /** The tables, view and indexes; {@link #create} adds the rest from {@link PetSql} */
+    static final String[] CREATE_STATEMENTS = {
+            "CREATE TABLE breeds (_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + "name TEXT NOT NULL COLLATE NOCASE);",
+            "CREATE UNIQUE INDEX breeds_name_idx ON breeds (name);",
+            "CREATE TABLE pets ( _id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL, "
+                    + "breed_id INTEGER REFERENCES breeds(_id), gender INTEGER NOT NULL, "
+                    + "weight INTEGER NOT NULL DEFAULT 0, photo_hash TEXT);",
+            "CREATE VIEW pets_view AS SELECT p._id AS _id, p.name AS name, b.name AS breed, "
+                    + "p.gender AS gender, p.weight AS weight, p.photo_hash AS photo_hash "
+                    + "FROM pets p LEFT JOIN breeds b ON b._id = p.breed_id;",
+            "CREATE INDEX IF NOT EXISTS pets_name_idx ON pets (name, _id);",
+            "CREATE INDEX IF NOT EXISTS pets_breed_idx ON pets (breed_id, _id, weight);",
+            "CREATE INDEX IF NOT EXISTS pets_gender_weight_idx ON pets (gender, weight);"
+    };
+
+    /** Connection settings applied by PetDbHelper.onConfigure */
+    static final String[] CONFIGURE_STATEMENTS = {
+            "PRAGMA journal_mode = WAL;",
+            "PRAGMA synchronous = NORMAL;"
+    };
+
+    private PetSchema() {}
+
+    /**
+     * Configure the connection and create the pets schema in its empty database.
+     */
+    static void create(Connection connection) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            for( String sql : CONFIGURE_STATEMENTS ) {
+                statement.execute(sql);
+            }
+            for( String sql : CREATE_STATEMENTS ) {
+                statement.execute(sql);
+            }
+            for( String sql : PetSql.createSearchIndex() ) {
+                statement.execute(sql);
+            }
+            for( String sql : PetSql.createChangeLog() ) {
+                statement.execute(sql);
+            }
+        } finally {
+            statement.close();
+        }
+    }
+}
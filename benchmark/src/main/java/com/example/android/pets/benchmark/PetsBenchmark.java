@@ -0,0 +1,962 @@
+package com.example.android.pets.benchmark;
+
+import com.example.android.pets.data.PetSql;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures the cost of the statements PetProvider runs against shelter.db, at several table
+ * sizes, and writes the results as JSON so they can be compared across releases.
+ *
+ * Usage: PetsBenchmark [output.json]. Without an argument the JSON goes to standard output.
+ */
+public final class PetsBenchmark {
+
+    /** Number of pets in the table before each benchmark runs */
+    private static final int[] TABLE_SIZES = { 1000, 10000, 100000 };
+
+    /** Runs of each benchmark before measuring, to warm up the JIT and the page cache */
+    private static final int WARMUP_RUNS = 1;
+
+    /** Measured runs of each benchmark */
+    private static final int MEASURED_RUNS = 3;
+
+    /**
+     * Pets inserted by single_insert and by bulk_insert, the same number so that their rows
+     * per second compare one transaction per pet with one transaction for all of them
+     */
+    private static final int INSERT_ROWS = 1000;
+
+    /** Number of pets of the search benchmarks, seeded once for both ways of searching */
+    private static final int[] SEARCH_TABLE_SIZES = { 10000, 100000, 1000000 };
+
+    /** Searches of each run of a search benchmark */
+    private static final int SEARCH_QUERIES = 20;
+
+    /** Operations per batch of the batch benchmarks, and the operations of each run */
+    private static final int[] BATCH_SIZES = { 100, 1000, 10000 };
+    private static final int BATCH_OPERATIONS = 10000;
+
+    /** Number of pets of the journal benchmarks, which compare WAL with a rollback journal */
+    private static final int JOURNAL_TABLE_SIZE = 10000;
+
+    /** Threads looking up pets, each on its own connection, while one thread writes */
+    private static final int JOURNAL_READERS = 3;
+
+    /** Transactions of the writer in each run of a journal benchmark */
+    private static final int JOURNAL_WRITES = 500;
+
+    /**
+     * Connection settings of each journal mode: the WAL of PetDbHelper.onConfigure, and the
+     * rollback journal with the full sync SQLite defaults to without WAL
+     */
+    private static final String[] JOURNAL_MODES = { "wal", "rollback" };
+    private static final String[][] JOURNAL_SETTINGS = {
+            { "PRAGMA journal_mode = WAL;", "PRAGMA synchronous = NORMAL;" },
+            { "PRAGMA journal_mode = DELETE;", "PRAGMA synchronous = FULL;" }
+    };
+
+    /** How long a connection waits for the lock of another before failing */
+    private static final String SQL_BUSY_TIMEOUT = "PRAGMA busy_timeout = 10000;";
+
+    /** Chunk sizes of the chunked delete of every pet, the provider deletes 1000 at a time */
+    private static final int[] DELETE_CHUNK_SIZES = { 100, 1000, 10000 };
+
+    private static final String[] NAMES = { "Toto", "Binx", "Garfield", "Tommy", "Rex",
+            "Bella", "Lucy", "Max", "Daisy", "Milo" };
+    /** Breeds of the pets, inserted in this order, so the id of a breed is its index + 1 */
+    private static final String[] BREEDS = { "Terrier", "Tabby", "Labrador", "Beagle",
+            "Persian", "Siamese", "Poodle", "Bulldog", null };
+
+    private static final String SQL_INSERT_BREED = "INSERT INTO breeds (name) VALUES (?)";
+    static final String SQL_INSERT = "INSERT INTO pets (name, breed_id, gender, weight) "
+            + "VALUES (?, ?, ?, ?)";
+    private static final String SQL_SELECT_ID = "SELECT _id, name, breed, gender, weight "
+            + "FROM pets_view WHERE _id=?";
+    private static final String SQL_SELECT_ALL = "SELECT _id, name, breed, gender, weight "
+            + "FROM pets_view";
+    private static final String SQL_SELECT_BY_NAME = SQL_SELECT_ALL + " ORDER BY name";
+    private static final String SQL_UPDATE_WEIGHT = "UPDATE pets SET weight=? WHERE _id=?";
+    /** A search of PetProvider.querySearch, through the full-text index */
+    private static final String SQL_SEARCH_FTS = "SELECT " + PetSql.PETS_VIEW + "._id, "
+            + PetSql.PETS_VIEW + ".name, " + PetSql.PETS_VIEW + ".breed, " + PetSql.PETS_VIEW
+            + ".gender, " + PetSql.PETS_VIEW + ".weight FROM " + PetSql.SEARCH_TABLES
+            + " WHERE " + PetSql.FTS_TABLE + " MATCH ? ORDER BY " + PetSql.SEARCH_ORDER;
+    /**
+     * The same search without the index: names and breeds are single words, so a LIKE of
+     * their start finds the pets the prefix query of the index finds
+     */
+    private static final String SQL_SEARCH_LIKE = "SELECT _id, name, breed, gender, weight "
+            + "FROM pets_view WHERE name LIKE ?1 OR breed LIKE ?1 ORDER BY name";
+    /** A chunk of PetProvider.deletePetsInChunks without a selection, the first ?1 pets */
+    private static final String SQL_DELETE_CHUNK = "DELETE FROM pets WHERE _id IN "
+            + "(SELECT _id FROM pets ORDER BY _id LIMIT ?)";
+    private static final String SQL_MAX_SEQ = "SELECT MAX(seq) FROM pet_changes";
+    private static final String SQL_STATS_BY_BREED = "SELECT b.name, s.count, s.min, s.avg, "
+            + "s.max FROM (SELECT breed_id, COUNT(*) AS count, MIN(weight) AS min, "
+            + "AVG(weight) AS avg, MAX(weight) AS max FROM pets GROUP BY breed_id) s "
+            + "LEFT JOIN breeds b ON b._id = s.breed_id";
+
+    /**
+     * One operation under measurement. Runs against a freshly seeded table and returns the
+     * number of operations it performed. It may also record how long each of its steps
+     * took, e.g. each transaction, in the latencies.
+     */
+    private interface Benchmark {
+        int run(Connection connection, int tableSize, Random random, Latencies latencies)
+                throws SQLException;
+    }
+
+    /** Durations of the steps of a benchmark, over all of its measured runs */
+    static final class Latencies {
+        private long[] mNanos = new long[64];
+        private int mSize;
+
+        void add(long nanos) {
+            if( mSize == mNanos.length ) {
+                mNanos = Arrays.copyOf(mNanos, mSize * 2);
+            }
+            mNanos[mSize++] = nanos;
+        }
+
+        /** Remove the steps of a warmup run */
+        void clear() {
+            mSize = 0;
+        }
+
+        int size() {
+            return mSize;
+        }
+
+        /** Add the steps of other, e.g. those another thread recorded */
+        void addAll(Latencies other) {
+            for( int i = 0; i < other.mSize; i++ ) {
+                add(other.mNanos[i]);
+            }
+        }
+
+        /** The duration below which the given percent of the steps took, 0 without steps */
+        long percentile(double percent) {
+            if( mSize == 0 ) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(mNanos, mSize);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percent / 100 * mSize) - 1;
+            return sorted[Math.max(0, Math.min(index, mSize - 1))];
+        }
+    }
+
+    /** The result of one benchmark at one table size */
+    private static final class Result {
+        final String name;
+        final int tableSize;
+        final int operations;
+        final long nanos;
+        final Latencies latencies;
+
+        Result(String name, int tableSize, int operations, long nanos, Latencies latencies) {
+            this.name = name;
+            this.tableSize = tableSize;
+            this.operations = operations;
+            this.nanos = nanos;
+            this.latencies = latencies;
+        }
+    }
+
+    private PetsBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        Class.forName("org.sqlite.JDBC");
+
+        ArrayList<Result> results = new ArrayList<>();
+        for( int tableSize : TABLE_SIZES ) {
+            results.add(measure("single_insert", tableSize, SINGLE_INSERT));
+            results.add(measure("bulk_insert", tableSize, BULK_INSERT));
+            results.add(measure("point_lookup", tableSize, POINT_LOOKUP));
+            results.add(measure("full_scan", tableSize, FULL_SCAN));
+            results.add(measure("sorted_scan", tableSize, SORTED_SCAN));
+            results.add(measure("update", tableSize, UPDATE));
+            results.add(measure("update_recompiled", tableSize, UPDATE_RECOMPILED));
+            results.add(measure("delta_sync", tableSize, DELTA_SYNC));
+            results.add(measure("stats_by_breed", tableSize, STATS_BY_BREED));
+            results.add(measure("update_then_fetch", tableSize, UPDATE_THEN_FETCH));
+            results.add(measure("upsert_and_fetch", tableSize, UPSERT_AND_FETCH));
+            for( int batchSize : BATCH_SIZES ) {
+                results.add(measure("apply_batch_" + batchSize, tableSize,
+                        applyBatches(batchSize)));
+            }
+            for( int chunkSize : DELETE_CHUNK_SIZES ) {
+                results.add(measure("delete_all_chunk_" + chunkSize, tableSize,
+                        deleteAllInChunks(chunkSize)));
+            }
+        }
+
+        for( int tableSize : SEARCH_TABLE_SIZES ) {
+            measureSearches(tableSize, results);
+        }
+
+        for( int mode = 0; mode < JOURNAL_MODES.length; mode++ ) {
+            measureJournal(JOURNAL_MODES[mode], JOURNAL_SETTINGS[mode], results);
+        }
+
+        String json = toJson(results);
+        if( args.length > 0 ) {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(args[0]),
+                    Charset.forName("UTF-8"));
+            try {
+                writer.write(json);
+            } finally {
+                writer.close();
+            }
+        } else {
+            System.out.println(json);
+        }
+    }
+
+    /** One insert per transaction, like a call of PetProvider.insert for every pet */
+    private static final Benchmark SINGLE_INSERT = new Benchmark() {
+        @Override
+        public int run(Connection connection, int tableSize, Random random,
+                       Latencies latencies) throws SQLException {
+            final int count = INSERT_ROWS;
+            PreparedStatement insert = connection.prepareStatement(SQL_INSERT);
+            try {
+                for( int i = 0; i < count; i++ ) {
+                    bindPet(insert, random);
+                    insert.executeUpdate();
+                }
+            } finally {
+                insert.close();
+            }
+            return count;
+        }
+    };
+
+    /**
+     * The same inserts in one transaction through one statement, like one call of
+     * PetProvider.bulkInsert for all the pets
+     */
+    private static final Benchmark BULK_INSERT = new Benchmark() {
+        @Override
+        public int run(Connection connection, int tableSize, Random random,
+                       Latencies latencies) throws SQLException {
+            final int count = INSERT_ROWS;
+            insertPets(connection, count, random);
+            return count;
+        }
+    };
+
+    /** Lookups of a single pet by id, like a query on a pet URI */
+    private static final Benchmark POINT_LOOKUP = new Benchmark() {
+        @Override
+        public int run(Connection connection, int tableSize, Random random,
+                       Latencies latencies) throws SQLException {
+            final int count = 2000;
+            PreparedStatement select = connection.prepareStatement(SQL_SELECT_ID);
+            try {
+                for( int i = 0; i < count; i++ ) {
+                    select.setLong(1, 1 + random.nextInt(tableSize));
+                    readAll(select.executeQuery());
+                }
+            } finally {
+                select.close();
+            }
+            return count;
+        }
+    };
+
+    /** Reading every pet, like the catalog query without a sort order */
+    private static final Benchmark FULL_SCAN = new Benchmark() {
+        @Override
+        public int run(Connection connection, int tableSize, Random random,
+                       Latencies latencies) throws SQLException {
+            return scan(connection, SQL_SELECT_ALL);
+        }
+    };
+
+    /** Reading every pet sorted by name */
+    private static final Benchmark SORTED_SCAN = new Benchmark() {
+        @Override
+        public int run(Connection connection, int tableSize, Random random,
+                       Latencies latencies) throws SQLException {
+            return scan(connection, SQL_SELECT_BY_NAME);
+        }
+    };
+
+    /** Updates of a single pet by id, one per transaction, like an update on a pet URI */
+    private static final Benchmark UPDATE = new Benchmark() {
+        @Override
+        public int run(Connection connection, int tableSize, Random random,
+                       Latencies latencies) throws SQLException {
+            final int count = 200;
+            PreparedStatement update = connection.prepareStatement(SQL_UPDATE_WEIGHT);
+            try {
+                for( int i = 0; i < count; i++ ) {
+                    update.setInt(1, random.nextInt(60));
+                    update.setLong(2, 1 + random.nextInt(tableSize));
+                    update.executeUpdate();
+                }
+            } finally {
+                update.close();
+            }
+            return count;
+        }
+    };
+
+    /**
+     * Updates of a single pet by id compiling the statement for every call, like
+     * SQLiteDatabase.update does; the baseline of the compiled statements of PetProvider.
+     */
+    private static final Benchmark UPDATE_RECOMPILED = new Benchmark() {
+        @Override
+        public int run(Connection connection, int tableSize, Random random,
+                       Latencies latencies) throws SQLException {
+            final int count = 200;
+            for( int i = 0; i < count; i++ ) {
+                PreparedStatement update = connection.prepareStatement(SQL_UPDATE_WEIGHT);
+                try {
+                    update.setInt(1, random.nextInt(60));
+                    update.setLong(2, 1 + random.nextInt(tableSize));
+                    update.executeUpdate();
+                } finally {
+                    update.close();
+                }
+            }
+            return count;
+        }
+    };
+
+    /**
+     * Pages of the last changes, like a mirror querying pets/changes after its last sync.
+     * Seeding the table logged every pet; the number of changes read is fixed, so the time
+     * per change should not grow with the table.
+     */
+    private static final Benchmark DELTA_SYNC = new Benchmark() {
+        @Override
+        public int run(Connection connection, int tableSize, Random random,
+                       Latencies latencies) throws SQLException {
+            final int changes = 500;
+            final int pageSize = 100;
+            long since = queryLong(connection, SQL_MAX_SEQ) - changes;
+
+            PreparedStatement select = connection.prepareStatement(PetSql.SQL_CHANGES);
+            int count = 0;
+            try {
+                int page;
+                do {
+                    // bound as text, like PetProvider.queryChanges
+                    select.setString(1, String.valueOf(since));
+                    select.setString(2, String.valueOf(pageSize));
+                    ResultSet rows = select.executeQuery();
+                    page = 0;
+                    try {
+                        while( rows.next() ) {
+                            since = rows.getLong(1);
+                            rows.getLong(2);
+                            rows.getInt(3);
+                            rows.getString(4);
+                            rows.getString(5);
+                            rows.getInt(6);
+                            rows.getInt(7);
+                            rows.getString(8);
+                            page++;
+                        }
+                    } finally {
+                        rows.close();
+                    }
+                    count += page;
+                } while( page == pageSize );
+            } finally {
+                select.close();
+            }
+            return count;
+        }
+    };
+
+    /** The breed group of the statistics of PetProvider, one row per breed */
+    private static final Benchmark STATS_BY_BREED = new Benchmark() {
+        @Override
+        public int run(Connection connection, int tableSize, Random random,
+                       Latencies latencies) throws SQLException {
+            final int count = 5;
+            Statement statement = connection.createStatement();
+            try {
+                for( int i = 0; i < count; i++ ) {
+                    ResultSet rows = statement.executeQuery(SQL_STATS_BY_BREED);
+                    try {
+                        while( rows.next() ) {
+                            rows.getString(1);
+                            rows.getInt(2);
+                            rows.getInt(3);
+                            rows.getDouble(4);
+                            rows.getInt(5);
+                        }
+                    } finally {
+                        rows.close();
+                    }
+                }
+            } finally {
+                statement.close();
+            }
+            return count;
+        }
+    };
+
+    /**
+     * An update of a pet followed by a separate query of it, like a caller doing update and
+     * then query on a pet URI: two calls, each its own transaction.
+     */
+    private static final Benchmark UPDATE_THEN_FETCH = new Benchmark() {
+        @Override
+        public int run(Connection connection, int tableSize, Random random,
+                       Latencies latencies) throws SQLException {
+            return updateAndFetch(connection, tableSize, random, false);
+        }
+    };
+
+    /**
+     * The same update and query in one transaction, like the upsertAndFetch call of
+     * PetProvider. The Binder round trip it also saves is not part of the measure.
+     */
+    private static final Benchmark UPSERT_AND_FETCH = new Benchmark() {
+        @Override
+        public int run(Connection connection, int tableSize, Random random,
+                       Latencies latencies) throws SQLException {
+            return updateAndFetch(connection, tableSize, random, true);
+        }
+    };
+
+    /** Searches through the full-text index, like a query of pets/search */
+    private static final Benchmark SEARCH_FTS = new Benchmark() {
+        @Override
+        public int run(Connection connection, int tableSize, Random random,
+                       Latencies latencies) throws SQLException {
+            return search(connection, SQL_SEARCH_FTS, true, random, latencies);
+        }
+    };
+
+    /** The same searches with LIKE, reading every pet */
+    private static final Benchmark SEARCH_LIKE = new Benchmark() {
+        @Override
+        public int run(Connection connection, int tableSize, Random random,
+                       Latencies latencies) throws SQLException {
+            return search(connection, SQL_SEARCH_LIKE, false, random, latencies);
+        }
+    };
+
+    /**
+     * Search for {@link #SEARCH_QUERIES} random names like "Rex42", reading every pet found.
+     * A step is one search.
+     */
+    private static int search(Connection connection, String sql, boolean fts, Random random,
+                              Latencies latencies) throws SQLException {
+        PreparedStatement select = connection.prepareStatement(sql);
+        try {
+            for( int i = 0; i < SEARCH_QUERIES; i++ ) {
+                String text = NAMES[random.nextInt(NAMES.length)] + random.nextInt(100);
+                long start = System.nanoTime();
+                select.setString(1, fts ? PetSql.buildMatchExpression(text) : text + "%");
+                readAll(select.executeQuery());
+                latencies.add(System.nanoTime() - start);
+            }
+        } finally {
+            select.close();
+        }
+        return SEARCH_QUERIES;
+    }
+
+    /**
+     * Batches of the given number of operations, half inserts and half updates of a pet by id,
+     * each batch in one transaction like PetProvider.applyBatch. The latency of a step is
+     * that of a whole batch, what a caller of applyBatch waits for.
+     */
+    private static Benchmark applyBatches(final int batchSize) {
+        return new Benchmark() {
+            @Override
+            public int run(Connection connection, int tableSize, Random random,
+                           Latencies latencies) throws SQLException {
+                PreparedStatement insert = connection.prepareStatement(SQL_INSERT);
+                PreparedStatement update = connection.prepareStatement(SQL_UPDATE_WEIGHT);
+                try {
+                    for( int batch = 0; batch < BATCH_OPERATIONS / batchSize; batch++ ) {
+                        long start = System.nanoTime();
+                        connection.setAutoCommit(false);
+                        for( int i = 0; i < batchSize; i++ ) {
+                            if( i % 2 == 0 ) {
+                                bindPet(insert, random);
+                                insert.executeUpdate();
+                            } else {
+                                update.setInt(1, random.nextInt(60));
+                                update.setLong(2, 1 + random.nextInt(tableSize));
+                                update.executeUpdate();
+                            }
+                        }
+                        connection.commit();
+                        connection.setAutoCommit(true);
+                        latencies.add(System.nanoTime() - start);
+                    }
+                } finally {
+                    insert.close();
+                    update.close();
+                }
+                return BATCH_OPERATIONS;
+            }
+        };
+    }
+
+    /**
+     * Deleting every pet in chunks of the given size, each chunk its own transaction, like
+     * PetProvider.deletePetsInChunks. The latency of a chunk is how long it holds the write
+     * lock: the larger the chunk, the fewer transactions but the longer other writers wait.
+     */
+    private static Benchmark deleteAllInChunks(final int chunkSize) {
+        return new Benchmark() {
+            @Override
+            public int run(Connection connection, int tableSize, Random random,
+                           Latencies latencies) throws SQLException {
+                PreparedStatement delete = connection.prepareStatement(SQL_DELETE_CHUNK);
+                int count = 0;
+                try {
+                    int deleted;
+                    do {
+                        long start = System.nanoTime();
+                        delete.setInt(1, chunkSize);
+                        deleted = delete.executeUpdate();
+                        latencies.add(System.nanoTime() - start);
+                        count += deleted;
+                    } while( deleted == chunkSize );
+                } finally {
+                    delete.close();
+                }
+                return count;
+            }
+        };
+    }
+
+    private static int updateAndFetch(Connection connection, int tableSize, Random random,
+                                      boolean oneTransaction) throws SQLException {
+        final int count = 200;
+        PreparedStatement update = connection.prepareStatement(SQL_UPDATE_WEIGHT);
+        PreparedStatement select = connection.prepareStatement(SQL_SELECT_ID);
+        try {
+            for( int i = 0; i < count; i++ ) {
+                long id = 1 + random.nextInt(tableSize);
+                if( oneTransaction ) {
+                    connection.setAutoCommit(false);
+                }
+                update.setInt(1, random.nextInt(60));
+                update.setLong(2, id);
+                update.executeUpdate();
+                select.setLong(1, id);
+                readAll(select.executeQuery());
+                if( oneTransaction ) {
+                    connection.commit();
+                    connection.setAutoCommit(true);
+                }
+            }
+        } finally {
+            update.close();
+            select.close();
+        }
+        return count;
+    }
+
+    /**
+     * Run the benchmark on a freshly seeded database for every warmup and measured run,
+     * and sum up the measured runs.
+     */
+    private static Result measure(String name, int tableSize, Benchmark benchmark)
+            throws SQLException, IOException {
+        int operations = 0;
+        long nanos = 0;
+        Latencies latencies = new Latencies();
+        for( int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++ ) {
+            File file = File.createTempFile("shelter", ".db");
+            Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+            try {
+                PetSchema.create(connection);
+                insertBreeds(connection);
+                insertPets(connection, tableSize, new Random(tableSize));
+
+                Random random = new Random(run);
+                long start = System.nanoTime();
+                int count = benchmark.run(connection, tableSize, random, latencies);
+                long elapsed = System.nanoTime() - start;
+                if( run >= WARMUP_RUNS ) {
+                    operations += count;
+                    nanos += elapsed;
+                } else {
+                    latencies.clear();
+                }
+            } finally {
+                connection.close();
+                deleteDatabase(file);
+            }
+        }
+        return new Result(name, tableSize, operations, nanos, latencies);
+    }
+
+    /**
+     * Seed one database of the given size and measure both ways of searching it. Seeding a
+     * million pets through the triggers takes far longer than the searches, so unlike
+     * {@link #measure} the runs share the database; searches do not write.
+     */
+    private static void measureSearches(int tableSize, ArrayList<Result> results)
+            throws SQLException, IOException {
+        File file = File.createTempFile("shelter", ".db");
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+        try {
+            PetSchema.create(connection);
+            insertBreeds(connection);
+            insertPets(connection, tableSize, new Random(tableSize));
+            results.add(measureOn(connection, "search_fts", tableSize, SEARCH_FTS));
+            results.add(measureOn(connection, "search_like", tableSize, SEARCH_LIKE));
+        } finally {
+            connection.close();
+            deleteDatabase(file);
+        }
+    }
+
+    /** Run the benchmark on the given database for every warmup and measured run */
+    private static Result measureOn(Connection connection, String name, int tableSize,
+                                    Benchmark benchmark) throws SQLException {
+        int operations = 0;
+        long nanos = 0;
+        Latencies latencies = new Latencies();
+        for( int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++ ) {
+            long start = System.nanoTime();
+            int count = benchmark.run(connection, tableSize, new Random(run), latencies);
+            long elapsed = System.nanoTime() - start;
+            if( run >= WARMUP_RUNS ) {
+                operations += count;
+                nanos += elapsed;
+            } else {
+                latencies.clear();
+            }
+        }
+        return new Result(name, tableSize, operations, nanos, latencies);
+    }
+
+    /**
+     * Seed one database in the given journal mode and, for every warmup and measured run,
+     * look up pets on {@link #JOURNAL_READERS} connections while another connection updates
+     * pets one transaction at a time. Records the latency of every lookup and of every write
+     * transaction, including any wait for the lock of another connection, as
+     * journal_&lt;mode&gt;_reads and journal_&lt;mode&gt;_writes.
+     */
+    private static void measureJournal(String mode, String[] settings,
+                                       ArrayList<Result> results)
+            throws SQLException, IOException, InterruptedException {
+        File file = File.createTempFile("shelter", ".db");
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+        try {
+            PetSchema.create(connection);
+            insertBreeds(connection);
+            insertPets(connection, JOURNAL_TABLE_SIZE, new Random(JOURNAL_TABLE_SIZE));
+            configure(connection, settings);
+
+            int reads = 0;
+            long readNanos = 0;
+            Latencies readLatencies = new Latencies();
+            int writes = 0;
+            long writeNanos = 0;
+            Latencies writeLatencies = new Latencies();
+            for( int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++ ) {
+                JournalRound round = new JournalRound(file, settings, run);
+                round.run();
+                if( run >= WARMUP_RUNS ) {
+                    reads += round.reads;
+                    readNanos += round.nanos;
+                    readLatencies.addAll(round.readLatencies);
+                    writes += JOURNAL_WRITES;
+                    writeNanos += round.nanos;
+                    writeLatencies.addAll(round.writeLatencies);
+                }
+            }
+            results.add(new Result("journal_" + mode + "_reads", JOURNAL_TABLE_SIZE, reads,
+                    readNanos, readLatencies));
+            results.add(new Result("journal_" + mode + "_writes", JOURNAL_TABLE_SIZE, writes,
+                    writeNanos, writeLatencies));
+        } finally {
+            connection.close();
+            deleteDatabase(file);
+        }
+    }
+
+    /** Apply the journal settings, and wait for the locks of other connections */
+    private static void configure(Connection connection, String[] settings)
+            throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            for( String sql : settings ) {
+                statement.execute(sql);
+            }
+            statement.execute(SQL_BUSY_TIMEOUT);
+        } finally {
+            statement.close();
+        }
+    }
+
+    /** One run of a journal benchmark: the readers run until the writer is done */
+    private static final class JournalRound {
+        private final File mFile;
+        private final String[] mSettings;
+        private final int mRun;
+        private volatile boolean mWriting;
+        private SQLException mFailure;
+
+        final Latencies readLatencies = new Latencies();
+        final Latencies writeLatencies = new Latencies();
+        int reads;
+        long nanos;
+
+        JournalRound(File file, String[] settings, int run) {
+            mFile = file;
+            mSettings = settings;
+            mRun = run;
+        }
+
+        void run() throws SQLException, InterruptedException {
+            final Latencies[] latencies = new Latencies[JOURNAL_READERS];
+            final int[] counts = new int[JOURNAL_READERS];
+            Thread[] readers = new Thread[JOURNAL_READERS];
+            mWriting = true;
+            for( int i = 0; i < JOURNAL_READERS; i++ ) {
+                final int reader = i;
+                latencies[reader] = new Latencies();
+                readers[reader] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            counts[reader] = read(new Random(mRun * JOURNAL_READERS + reader),
+                                    latencies[reader]);
+                        } catch( SQLException e ) {
+                            fail(e);
+                        }
+                    }
+                };
+            }
+
+            long start = System.nanoTime();
+            for( Thread reader : readers ) {
+                reader.start();
+            }
+            try {
+                write(new Random(mRun));
+            } catch( SQLException e ) {
+                fail(e);
+            } finally {
+                mWriting = false;
+                for( Thread reader : readers ) {
+                    reader.join();
+                }
+            }
+            nanos = System.nanoTime() - start;
+
+            synchronized( this ) {
+                if( mFailure != null ) {
+                    throw mFailure;
+                }
+            }
+            for( int i = 0; i < JOURNAL_READERS; i++ ) {
+                reads += counts[i];
+                readLatencies.addAll(latencies[i]);
+            }
+        }
+
+        private synchronized void fail(SQLException e) {
+            if( mFailure == null ) {
+                mFailure = e;
+            }
+        }
+
+        /** Look up random pets until the writer is done. Returns the number of lookups */
+        private int read(Random random, Latencies latencies) throws SQLException {
+            Connection connection = open();
+            int count = 0;
+            try {
+                PreparedStatement select = connection.prepareStatement(SQL_SELECT_ID);
+                try {
+                    while( mWriting ) {
+                        long start = System.nanoTime();
+                        select.setLong(1, 1 + random.nextInt(JOURNAL_TABLE_SIZE));
+                        readAll(select.executeQuery());
+                        latencies.add(System.nanoTime() - start);
+                        count++;
+                    }
+                } finally {
+                    select.close();
+                }
+            } finally {
+                connection.close();
+            }
+            return count;
+        }
+
+        /** Update the weight of a random pet {@link #JOURNAL_WRITES} times, one per commit */
+        private void write(Random random) throws SQLException {
+            Connection connection = open();
+            try {
+                PreparedStatement update = connection.prepareStatement(SQL_UPDATE_WEIGHT);
+                try {
+                    for( int i = 0; i < JOURNAL_WRITES; i++ ) {
+                        long start = System.nanoTime();
+                        update.setInt(1, random.nextInt(60));
+                        update.setLong(2, 1 + random.nextInt(JOURNAL_TABLE_SIZE));
+                        update.executeUpdate();
+                        writeLatencies.add(System.nanoTime() - start);
+                    }
+                } finally {
+                    update.close();
+                }
+            } finally {
+                connection.close();
+            }
+        }
+
+        private Connection open() throws SQLException {
+            Connection connection = DriverManager.getConnection("jdbc:sqlite:"
+                    + mFile.getPath());
+            configure(connection, mSettings);
+            return connection;
+        }
+    }
+
+    /** Insert the {@link #BREEDS}, in order */
+    static void insertBreeds(Connection connection) throws SQLException {
+        PreparedStatement insert = connection.prepareStatement(SQL_INSERT_BREED);
+        try {
+            for( String breed : BREEDS ) {
+                if( breed != null ) {
+                    insert.setString(1, breed);
+                    insert.executeUpdate();
+                }
+            }
+        } finally {
+            insert.close();
+        }
+    }
+
+    /** Insert random pets in a single transaction */
+    static void insertPets(Connection connection, int count, Random random)
+            throws SQLException {
+        connection.setAutoCommit(false);
+        PreparedStatement insert = connection.prepareStatement(SQL_INSERT);
+        try {
+            for( int i = 0; i < count; i++ ) {
+                bindPet(insert, random);
+                insert.executeUpdate();
+            }
+            connection.commit();
+        } finally {
+            insert.close();
+            connection.setAutoCommit(true);
+        }
+    }
+
+    static void bindPet(PreparedStatement insert, Random random) throws SQLException {
+        insert.setString(1, NAMES[random.nextInt(NAMES.length)] + random.nextInt(1000));
+        int breed = random.nextInt(BREEDS.length);
+        if( BREEDS[breed] == null ) {
+            insert.setNull(2, Types.INTEGER);
+        } else {
+            insert.setLong(2, breed + 1);
+        }
+        insert.setInt(3, random.nextInt(3));
+        insert.setInt(4, random.nextInt(60));
+    }
+
+    static long queryLong(Connection connection, String sql) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet rows = statement.executeQuery(sql);
+            try {
+                return rows.next() ? rows.getLong(1) : 0;
+            } finally {
+                rows.close();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    /** Read every row of the query and return the number of rows */
+    private static int scan(Connection connection, String sql) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            return readAll(statement.executeQuery(sql));
+        } finally {
+            statement.close();
+        }
+    }
+
+    /** Read every column of every row, closing the result set. Returns the number of rows */
+    private static int readAll(ResultSet rows) throws SQLException {
+        int count = 0;
+        try {
+            while( rows.next() ) {
+                rows.getLong(1);
+                rows.getString(2);
+                rows.getString(3);
+                rows.getInt(4);
+                rows.getInt(5);
+                count++;
+            }
+        } finally {
+            rows.close();
+        }
+        return count;
+    }
+
+    static void deleteDatabase(File file) {
+        file.delete();
+        new File(file.getPath() + "-wal").delete();
+        new File(file.getPath() + "-shm").delete();
+    }
+
+    private static String toJson(ArrayList<Result> results) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"warmupRuns\": ").append(WARMUP_RUNS)
+                .append(",\n  \"measuredRuns\": ").append(MEASURED_RUNS)
+                .append(",\n  \"results\": [");
+        for( int i = 0; i < results.size(); i++ ) {
+            Result result = results.get(i);
+            double nanosPerOp = result.operations == 0 ? 0 : (double) result.nanos / result.operations;
+            double opsPerSecond = result.nanos == 0 ? 0 : result.operations * 1e9 / result.nanos;
+            json.append(i == 0 ? "\n" : ",\n")
+                    .append("    {\"benchmark\": \"").append(result.name)
+                    .append("\", \"tableSize\": ").append(result.tableSize)
+                    .append(", \"operations\": ").append(result.operations)
+                    .append(", \"totalNanos\": ").append(result.nanos)
+                    .append(", \"nanosPerOp\": ").append(String.format(Locale.US, "%.1f", nanosPerOp))
+                    .append(", \"opsPerSecond\": ").append(String.format(Locale.US, "%.1f", opsPerSecond));
+            Latencies latencies = result.latencies;
+            if( latencies.size() > 0 ) {
+                json.append(", \"steps\": ").append(latencies.size())
+                        .append(", \"p50Nanos\": ").append(latencies.percentile(50))
+                        .append(", \"p99Nanos\": ").append(latencies.percentile(99))
+                        .append(", \"maxNanos\": ").append(latencies.percentile(100));
+            }
+            json.append('}');
+        }
+        json.append("\n  ]\n}");
+        return json.toString();
+    }
+}
@@ -0,0 +1,420 @@
+package com.example.android.pets.benchmark;
+
+import com.example.android.pets.data.PetSql;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks of the pets data layer that need no device, run on the JVM against SQLite through
+ * JDBC like {@link PetsBenchmark}. A failing check throws, so the run exits with an error.
+ *
+ * Usage: PetsChecks
+ */
+public final class PetsChecks {
+
+    /** One check, returns a summary of what it verified */
+    private interface Check {
+        String run() throws Exception;
+    }
+
+    /** Number of pets in the table before the journal check starts */
+    private static final int JOURNAL_PETS = 500;
+
+    /** Rounds of writes, syncs and compactions of the journal check */
+    private static final int JOURNAL_ROUNDS = 300;
+
+    /** Pets in the table before the search check starts, and its writes */
+    private static final int SEARCH_PETS = 500;
+    private static final int SEARCH_WRITES = 3000;
+
+    private static final String SQL_INSERT_WITH_ID = "INSERT INTO pets (name, breed_id, "
+            + "gender, weight, _id) VALUES (?, ?, ?, ?, ?)";
+    private static final String SQL_UPDATE = "UPDATE pets SET name=?, weight=? WHERE _id=?";
+    private static final String SQL_UPDATE_PHOTO = "UPDATE pets SET photo_hash=? WHERE _id=?";
+    private static final String SQL_DELETE = "DELETE FROM pets WHERE _id=?";
+    private static final String SQL_PETS = "SELECT _id, name, breed, gender, weight, "
+            + "photo_hash FROM pets_view";
+    private static final String SQL_UPDATE_BREED = "UPDATE pets SET breed_id=? WHERE _id=?";
+    private static final String SQL_NAMES_AND_BREEDS = "SELECT _id, name, breed FROM pets_view";
+    private static final String SQL_SEARCH_INDEX = "SELECT docid, name, breed FROM "
+            + PetSql.FTS_TABLE;
+    /** The pets a search of PetProvider.querySearch finds */
+    private static final String SQL_SEARCH = "SELECT COUNT(*) FROM " + PetSql.SEARCH_TABLES
+            + " WHERE " + PetSql.FTS_TABLE + " MATCH ?";
+    /** The same pets found without the index, names and breeds being single words */
+    private static final String SQL_SEARCH_LIKE = "SELECT COUNT(*) FROM pets_view WHERE "
+            + "name LIKE ?1 OR breed LIKE ?1";
+
+    private PetsChecks() {}
+
+    public static void main(String[] args) throws Exception {
+        Class.forName("org.sqlite.JDBC");
+        System.out.println("journal_replay: " + JOURNAL_REPLAY.run());
+        System.out.println("search_sync: " + SEARCH_SYNC.run());
+    }
+
+    /**
+     * Mirrors the pets through pages of pets/changes while pets are inserted, updated,
+     * given a new photo, deleted and inserted again under their old id, with compactions in between that
+     * sometimes expire every delete and so reset the mirror. Once synced to the end, the
+     * mirror has to equal the pets table.
+     */
+    private static final Check JOURNAL_REPLAY = new Check() {
+        @Override
+        public String run() throws Exception {
+            File file = File.createTempFile("shelter", ".db");
+            Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+            try {
+                PetSchema.create(connection);
+                PetsBenchmark.insertBreeds(connection);
+                PetsBenchmark.insertPets(connection, JOURNAL_PETS, new Random(JOURNAL_PETS));
+
+                Random random = new Random(21);
+                Mirror mirror = new Mirror();
+                int compactions = 0;
+                for( int round = 0; round < JOURNAL_ROUNDS; round++ ) {
+                    writeRandomly(connection, random, 1 + random.nextInt(20));
+                    int pages = random.nextInt(4);
+                    for( int page = 0; page < pages; page++ ) {
+                        mirror.sync(connection, 1 + random.nextInt(30));
+                    }
+                    if( random.nextInt(5) == 0 ) {
+                        // now or never, the triggers stamp the changes with the current time
+                        long expiry = random.nextInt(3) == 0 ? Long.MAX_VALUE : 0;
+                        compactChanges(connection, expiry);
+                        compactions++;
+                    }
+                }
+                while( mirror.sync(connection, 1 + random.nextInt(30)) ) {
+                    // up to the end of the journal
+                }
+
+                Map<Long, String> pets = readPets(connection);
+                if( !pets.equals(mirror.pets) ) {
+                    throw new AssertionError("Mirror of " + mirror.pets.size()
+                            + " pets differs from the " + pets.size() + " pets of the table");
+                }
+                if( mirror.resets == 0 ) {
+                    throw new AssertionError("No sync was reset, the expiry went untested");
+                }
+                return pets.size() + " pets mirrored through " + compactions
+                        + " compactions and " + mirror.resets + " resets";
+            } finally {
+                connection.close();
+                PetsBenchmark.deleteDatabase(file);
+            }
+        }
+    };
+
+    /**
+     * Renames pets, changes and clears their breed, deletes them and inserts them again under
+     * their old id, through the triggers of the full-text index. The index then has to hold
+     * the name and breed of every pet and of no other, and a search of a word has to find
+     * the pets whose name or breed starts with it, not those that used to.
+     */
+    private static final Check SEARCH_SYNC = new Check() {
+        @Override
+        public String run() throws Exception {
+            File file = File.createTempFile("shelter", ".db");
+            Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+            try {
+                PetSchema.create(connection);
+                PetsBenchmark.insertBreeds(connection);
+                PetsBenchmark.insertPets(connection, SEARCH_PETS, new Random(SEARCH_PETS));
+
+                Random random = new Random(8);
+                int[] writes = writeSearchedRandomly(connection, random);
+
+                Map<Long, String> pets = readNames(connection, SQL_NAMES_AND_BREEDS);
+                Map<Long, String> indexed = readNames(connection, SQL_SEARCH_INDEX);
+                if( !pets.equals(indexed) ) {
+                    throw new AssertionError("Index of " + indexed.size()
+                            + " pets differs from the " + pets.size() + " pets of the table");
+                }
+
+                int searches = 0;
+                PreparedStatement search = connection.prepareStatement(SQL_SEARCH);
+                PreparedStatement like = connection.prepareStatement(SQL_SEARCH_LIKE);
+                try {
+                    for( String word : new String[] { "Renamed", "Renamed1", "Toto", "Rex4",
+                            "Terrier", "Tabby", "Labrador", "Poodle", "Bulldog" } ) {
+                        search.setString(1, PetSql.buildMatchExpression(word));
+                        like.setString(1, word + "%");
+                        long found = queryCount(search);
+                        long expected = queryCount(like);
+                        if( found != expected ) {
+                            throw new AssertionError("Search of " + word + " found " + found
+                                    + " pets instead of " + expected);
+                        }
+                        searches++;
+                    }
+                } finally {
+                    search.close();
+                    like.close();
+                }
+                return pets.size() + " pets indexed after " + writes[0] + " renames, "
+                        + writes[1] + " breed changes, " + writes[2] + " deletes and "
+                        + writes[3] + " inserts under an old id, " + searches + " searches";
+            } finally {
+                connection.close();
+                PetsBenchmark.deleteDatabase(file);
+            }
+        }
+    };
+
+    /**
+     * Rename, change the breed of, delete or insert again random pets, each write in its own
+     * transaction. Returns the number of writes of each kind.
+     */
+    private static int[] writeSearchedRandomly(Connection connection, Random random)
+            throws SQLException {
+        int[] writes = new int[4];
+        PreparedStatement insertWithId = connection.prepareStatement(SQL_INSERT_WITH_ID);
+        PreparedStatement update = connection.prepareStatement(SQL_UPDATE);
+        PreparedStatement updateBreed = connection.prepareStatement(SQL_UPDATE_BREED);
+        PreparedStatement delete = connection.prepareStatement(SQL_DELETE);
+        try {
+            for( int i = 0; i < SEARCH_WRITES; i++ ) {
+                long id = 1 + random.nextInt(SEARCH_PETS);
+                int kind = random.nextInt(writes.length);
+                switch( kind ) {
+                    case 0:
+                        update.setString(1, "Renamed" + random.nextInt(1000));
+                        update.setInt(2, random.nextInt(60));
+                        update.setLong(3, id);
+                        update.executeUpdate();
+                        break;
+                    case 1:
+                        // breed ids 1 to 8, or none
+                        int breed = random.nextInt(9);
+                        if( breed == 0 ) {
+                            updateBreed.setNull(1, Types.INTEGER);
+                        } else {
+                            updateBreed.setLong(1, breed);
+                        }
+                        updateBreed.setLong(2, id);
+                        updateBreed.executeUpdate();
+                        break;
+                    case 2:
+                        delete.setLong(1, id);
+                        delete.executeUpdate();
+                        break;
+                    default:
+                        delete.setLong(1, id);
+                        delete.executeUpdate();
+                        PetsBenchmark.bindPet(insertWithId, random);
+                        insertWithId.setLong(5, id);
+                        insertWithId.executeUpdate();
+                }
+                writes[kind]++;
+            }
+        } finally {
+            insertWithId.close();
+            update.close();
+            updateBreed.close();
+            delete.close();
+        }
+        return writes;
+    }
+
+    /** Read the name and breed of the rows of the query, keyed by the id in its first column */
+    private static Map<Long, String> readNames(Connection connection, String sql)
+            throws SQLException {
+        Map<Long, String> names = new HashMap<>();
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet rows = statement.executeQuery(sql);
+            try {
+                while( rows.next() ) {
+                    names.put(rows.getLong(1), rows.getString(2) + "|" + rows.getString(3));
+                }
+            } finally {
+                rows.close();
+            }
+        } finally {
+            statement.close();
+        }
+        return names;
+    }
+
+    private static long queryCount(PreparedStatement count) throws SQLException {
+        ResultSet rows = count.executeQuery();
+        try {
+            return rows.next() ? rows.getLong(1) : 0;
+        } finally {
+            rows.close();
+        }
+    }
+
+    /** The pets as a mirror sees them, keyed by id */
+    private static final class Mirror {
+        final Map<Long, String> pets = new HashMap<>();
+        long since;
+        int resets;
+
+        /**
+         * Apply the next page of changes. Returns false once the journal has nothing after
+         * {@link #since}.
+         */
+        boolean sync(Connection connection, int pageSize) throws SQLException {
+            PreparedStatement select = connection.prepareStatement(PetSql.SQL_CHANGES);
+            try {
+                // bound as text, like PetProvider.queryChanges
+                select.setString(1, String.valueOf(since));
+                select.setString(2, String.valueOf(pageSize));
+                ResultSet rows = select.executeQuery();
+                int count = 0;
+                boolean reset = false;
+                try {
+                    while( rows.next() ) {
+                        count++;
+                        since = rows.getLong(1);
+                        int operation = rows.getInt(3);
+                        if( operation == PetSql.OPERATION_RESET ) {
+                            // reload, changes after the reset and before the load are
+                            // applied twice, which upserts and deletes allow
+                            pets.clear();
+                            pets.putAll(readPets(connection));
+                            resets++;
+                            reset = true;
+                        } else if( operation == PetSql.OPERATION_DELETE ) {
+                            pets.remove(rows.getLong(2));
+                        } else {
+                            pets.put(rows.getLong(2), rows.getString(4) + "|" + rows.getString(5)
+                                    + "|" + rows.getInt(6) + "|" + rows.getInt(7) + "|"
+                                    + rows.getString(8));
+                        }
+                    }
+                } finally {
+                    rows.close();
+                }
+                return reset || count == pageSize;
+            } finally {
+                select.close();
+            }
+        }
+    }
+
+    /** Insert, update, photograph or delete random pets, each write in its own transaction */
+    private static void writeRandomly(Connection connection, Random random, int count)
+            throws SQLException {
+        PreparedStatement insert = connection.prepareStatement(PetsBenchmark.SQL_INSERT);
+        PreparedStatement insertWithId = connection.prepareStatement(SQL_INSERT_WITH_ID);
+        PreparedStatement update = connection.prepareStatement(SQL_UPDATE);
+        PreparedStatement updatePhoto = connection.prepareStatement(SQL_UPDATE_PHOTO);
+        PreparedStatement delete = connection.prepareStatement(SQL_DELETE);
+        try {
+            long maxId = PetsBenchmark.queryLong(connection, "SELECT MAX(_id) FROM pets");
+            for( int i = 0; i < count; i++ ) {
+                long id = 1 + (long) random.nextInt((int) Math.max(maxId, 1));
+                switch( random.nextInt(5) ) {
+                    case 0:
+                        PetsBenchmark.bindPet(insert, random);
+                        insert.executeUpdate();
+                        break;
+                    case 1:
+                        update.setString(1, "Renamed" + random.nextInt(1000));
+                        update.setInt(2, random.nextInt(60));
+                        update.setLong(3, id);
+                        update.executeUpdate();
+                        break;
+                    case 2:
+                        delete.setLong(1, id);
+                        delete.executeUpdate();
+                        break;
+                    case 3:
+                        updatePhoto.setString(1, Long.toHexString(random.nextLong()));
+                        updatePhoto.setLong(2, id);
+                        updatePhoto.executeUpdate();
+                        break;
+                    default:
+                        // a deleted pet back under its id, like upsertAndFetch does
+                        delete.setLong(1, id);
+                        delete.executeUpdate();
+                        PetsBenchmark.bindPet(insertWithId, random);
+                        insertWithId.setLong(5, id);
+                        insertWithId.executeUpdate();
+                }
+            }
+        } finally {
+            insert.close();
+            insertWithId.close();
+            update.close();
+            updatePhoto.close();
+            delete.close();
+        }
+    }
+
+    /**
+     * Compact the journal like PetProvider.compactChanges, expiring the deletes before expiry.
+     * The arguments are bound as text, like the provider binds them.
+     */
+    private static void compactChanges(Connection connection, long expiry) throws SQLException {
+        PreparedStatement chunkEnd = connection.prepareStatement(PetSql.SQL_COMPACT_CHUNK_END);
+        PreparedStatement expire = connection.prepareStatement(PetSql.SQL_EXPIRE_DELETES);
+        PreparedStatement compact = connection.prepareStatement(PetSql.SQL_COMPACT_CHANGES);
+        try {
+            long after = 0;
+            while( true ) {
+                chunkEnd.setString(1, String.valueOf(after));
+                ResultSet rows = chunkEnd.executeQuery();
+                long end;
+                try {
+                    end = rows.next() ? rows.getLong(1) : 0;
+                } finally {
+                    rows.close();
+                }
+                if( end == 0 ) {
+                    return;
+                }
+                connection.setAutoCommit(false);
+                try {
+                    for( PreparedStatement statement : new PreparedStatement[] { expire, compact } ) {
+                        statement.setString(1, String.valueOf(after));
+                        statement.setString(2, String.valueOf(end));
+                        statement.setString(3, String.valueOf(expiry));
+                        statement.executeUpdate();
+                    }
+                    connection.commit();
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+                after = end;
+            }
+        } finally {
+            chunkEnd.close();
+            expire.close();
+            compact.close();
+        }
+    }
+
+    private static Map<Long, String> readPets(Connection connection) throws SQLException {
+        Map<Long, String> pets = new HashMap<>();
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet rows = statement.executeQuery(SQL_PETS);
+            try {
+                while( rows.next() ) {
+                    pets.put(rows.getLong(1), rows.getString(2) + "|" + rows.getString(3)
+                            + "|" + rows.getInt(4) + "|" + rows.getInt(5) + "|"
+                            + rows.getString(6));
+                }
+            } finally {
+                rows.close();
+            }
+        } finally {
+            statement.close();
+        }
+        return pets;
+    }
+}